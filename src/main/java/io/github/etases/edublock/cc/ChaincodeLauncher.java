@@ -0,0 +1,237 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.model.Record;
+import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.util.ConfigUtil;
+import io.github.etases.edublock.cc.util.JsonUtil;
+import org.hyperledger.fabric.Logger;
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * The entry point of the chaincode.
+ * Starts as a chaincode server (chaincode-as-a-service) when {@value #SERVER_ADDRESS} is set,
+ * otherwise connects to the peer like {@link ContractRouter}.
+ * With {@value #TRAINING_RUN} it only goes through the startup and exits, to record the classes for the class-data-sharing archive.
+ */
+public final class ChaincodeLauncher {
+    /**
+     * The host:port the chaincode server listens on
+     */
+    public static final String SERVER_ADDRESS = "CHAINCODE_SERVER_ADDRESS";
+    /**
+     * The chaincode id, used when {@value #CHAINCODE_ID_NAME} and the command line do not give one
+     */
+    public static final String CHAINCODE_ID = "CHAINCODE_ID";
+    /**
+     * The number of Netty event loop threads serving the gRPC connections, 0 to use the Netty default
+     */
+    public static final String EVENT_LOOP_THREADS = "EDUBLOCK_SERVER_EVENT_LOOP_THREADS";
+    public static final String MAX_INBOUND_MESSAGE_SIZE = "EDUBLOCK_SERVER_MAX_INBOUND_MESSAGE_SIZE";
+    public static final String MAX_INBOUND_METADATA_SIZE = "EDUBLOCK_SERVER_MAX_INBOUND_METADATA_SIZE";
+    public static final String MAX_CONNECTION_AGE_SECONDS = "EDUBLOCK_SERVER_MAX_CONNECTION_AGE_SECONDS";
+    public static final String KEEP_ALIVE_TIME_MINUTES = "EDUBLOCK_SERVER_KEEP_ALIVE_TIME_MINUTES";
+    public static final String KEEP_ALIVE_TIMEOUT_SECONDS = "EDUBLOCK_SERVER_KEEP_ALIVE_TIMEOUT_SECONDS";
+    public static final String PERMIT_KEEP_ALIVE_TIME_MINUTES = "EDUBLOCK_SERVER_PERMIT_KEEP_ALIVE_TIME_MINUTES";
+    public static final String PERMIT_KEEP_ALIVE_WITHOUT_CALLS = "EDUBLOCK_SERVER_PERMIT_KEEP_ALIVE_WITHOUT_CALLS";
+    /**
+     * The core size of the pool dispatching the transactions
+     */
+    public static final String TX_CORE_THREADS = "EDUBLOCK_TX_CORE_THREADS";
+    /**
+     * The maximum size of the pool dispatching the transactions
+     */
+    public static final String TX_MAX_THREADS = "EDUBLOCK_TX_MAX_THREADS";
+    /**
+     * The number of transactions waiting for a dispatch thread before the new ones are rejected
+     */
+    public static final String TX_QUEUE_SIZE = "EDUBLOCK_TX_QUEUE_SIZE";
+    /**
+     * The time an idle dispatch thread above the core size is kept
+     */
+    public static final String TX_KEEP_ALIVE_MS = "EDUBLOCK_TX_KEEP_ALIVE_MS";
+    /**
+     * Set to true to start up without serving and exit
+     */
+    public static final String TRAINING_RUN = "EDUBLOCK_TRAINING_RUN";
+    /**
+     * The types exchanged or stored by the contract, their converters are built before the first transaction
+     */
+    static final List<Class<?>> MODEL_TYPES = Collections.unmodifiableList(Arrays.asList(
+            ClassRecord.class, Classification.class, CollectionPersonalMap.class, ExistenceMap.class,
+            ImportBatch.class, ImportChunkResult.class, ImportStatus.class, LabelDictionary.class,
+            Personal.class, PersonalMap.class, RankingEntry.class, RankingList.class,
+            Record.class, RecordFilter.class, RecordHistory.class, RecordHistoryList.class,
+            RecordIndex.class, RecordMap.class, RecordPage.class, StoredRecord.class,
+            StudentProfile.class, StudentSummary.class, StudentSummaryMap.class, Subject.class,
+            UpdateResult.class, YearSummary.class
+    ));
+    static final String TRAINING_CHAINCODE_ID = "training";
+    static final String CHAINCODE_ID_NAME = "CORE_CHAINCODE_ID_NAME";
+    static final String NETTY_EVENT_LOOP_THREADS_PROPERTY = "io.grpc.netty.shaded.io.netty.eventLoopThreads";
+    private static final Logger logger = Logger.getLogger(ChaincodeLauncher.class);
+
+    private ChaincodeLauncher() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (ConfigUtil.getBoolean(TRAINING_RUN, false)) {
+            train(args);
+            return;
+        }
+        warmUp();
+        String address = ConfigUtil.getString(SERVER_ADDRESS, null);
+        if (address == null) {
+            ContractRouter.main(args);
+            return;
+        }
+        // The shaded Netty reads it once, when the first event loop group is created
+        configureEventLoopThreads();
+        ContractRouter router = createRouter(args);
+        router.startRouterWithChaincodeServer(createServer(router, address));
+    }
+
+    /**
+     * Go through the startup of the router without serving
+     *
+     * @param args the command line arguments
+     * @throws Exception if the startup fails
+     */
+    static void train(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (ConfigUtil.getString(CHAINCODE_ID, null) == null && System.getenv(CHAINCODE_ID_NAME) == null && !hasIdArgument(args)) {
+            arguments.add("-i");
+            arguments.add(TRAINING_CHAINCODE_ID);
+        }
+        ContractRouter router = createRouter(arguments.toArray(new String[0]));
+        // Scans the contracts and builds their metadata like a real start, then returns at once
+        router.startRouterWithChaincodeServer(new ChaincodeServer() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+        });
+        warmUp();
+    }
+
+    /**
+     * Build the JSON converters of the model types
+     */
+    static void warmUp() {
+        long start = System.nanoTime();
+        JsonUtil.warmUp(MODEL_TYPES);
+        logger.info(String.format("Warmed up %d model types in %d ms", MODEL_TYPES.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Create the router, with the transaction dispatch pool configured from the environment
+     *
+     * @param args the command line arguments
+     * @return the router
+     */
+    static ContractRouter createRouter(String[] args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String chaincodeId = ConfigUtil.getString(CHAINCODE_ID, null);
+        if (chaincodeId != null && System.getenv(CHAINCODE_ID_NAME) == null && !hasIdArgument(args)) {
+            arguments.add("-i");
+            arguments.add(chaincodeId);
+        }
+        ContractRouter router = new ContractRouter(arguments.toArray(new String[0]));
+        configureExecutor(router.getChaincodeConfig());
+        return router;
+    }
+
+    /**
+     * Create the chaincode server of the router
+     *
+     * @param router  the router
+     * @param address the host:port to listen on
+     * @return the server, not started
+     * @throws IOException if the server cannot be created
+     */
+    static ChaincodeServer createServer(ContractRouter router, String address) throws IOException {
+        return new NettyChaincodeServer(router, createServerProperties(address));
+    }
+
+    static void configureEventLoopThreads() {
+        int threads = ConfigUtil.getInt(EVENT_LOOP_THREADS, 0);
+        if (threads > 0) {
+            System.setProperty(NETTY_EVENT_LOOP_THREADS_PROPERTY, Integer.toString(threads));
+        }
+    }
+
+    static void configureExecutor(Properties config) {
+        copyConfig(config, TX_CORE_THREADS, "TP_CORE_POOL_SIZE");
+        copyConfig(config, TX_MAX_THREADS, "TP_MAX_POOL_SIZE");
+        copyConfig(config, TX_QUEUE_SIZE, "TP_QUEUE_SIZE");
+        copyConfig(config, TX_KEEP_ALIVE_MS, "TP_KEEP_ALIVE_MS");
+        int coreThreads = Integer.parseInt(config.getProperty("TP_CORE_POOL_SIZE", "5"));
+        int maxThreads = Integer.parseInt(config.getProperty("TP_MAX_POOL_SIZE", "5"));
+        if (maxThreads < coreThreads) {
+            throw new IllegalArgumentException(String.format("%s (%d) is less than %s (%d)", TX_MAX_THREADS, maxThreads, TX_CORE_THREADS, coreThreads));
+        }
+    }
+
+    static ChaincodeServerProperties createServerProperties(String address) {
+        ChaincodeServerProperties properties = new ChaincodeServerProperties();
+        properties.setServerAddress(parseAddress(address));
+        properties.setMaxInboundMessageSize(ConfigUtil.getInt(MAX_INBOUND_MESSAGE_SIZE, properties.getMaxInboundMessageSize()));
+        properties.setMaxInboundMetadataSize(ConfigUtil.getInt(MAX_INBOUND_METADATA_SIZE, properties.getMaxInboundMetadataSize()));
+        properties.setMaxConnectionAgeSeconds(ConfigUtil.getInt(MAX_CONNECTION_AGE_SECONDS, properties.getMaxConnectionAgeSeconds()));
+        properties.setKeepAliveTimeMinutes(ConfigUtil.getInt(KEEP_ALIVE_TIME_MINUTES, properties.getKeepAliveTimeMinutes()));
+        properties.setKeepAliveTimeoutSeconds(ConfigUtil.getInt(KEEP_ALIVE_TIMEOUT_SECONDS, properties.getKeepAliveTimeoutSeconds()));
+        properties.setPermitKeepAliveTimeMinutes(ConfigUtil.getInt(PERMIT_KEEP_ALIVE_TIME_MINUTES, properties.getPermitKeepAliveTimeMinutes()));
+        properties.setPermitKeepAliveWithoutCalls(ConfigUtil.getBoolean(PERMIT_KEEP_ALIVE_WITHOUT_CALLS, properties.isPermitKeepAliveWithoutCalls()));
+        // Same variables as the peer-launched mode
+        if (ConfigUtil.getBoolean("CORE_PEER_TLS_ENABLED", false)) {
+            properties.setTlsEnabled(true);
+            properties.setKeyFile(ConfigUtil.getString("CORE_TLS_CLIENT_KEY_FILE", null));
+            properties.setKeyCertChainFile(ConfigUtil.getString("CORE_TLS_CLIENT_CERT_FILE", null));
+            properties.setTrustCertCollectionFile(ConfigUtil.getString("CORE_PEER_TLS_ROOTCERT_FILE", null));
+        }
+        properties.validate();
+        logger.info(String.format("Chaincode server on %s, max message %d bytes, keepalive %d min",
+                address, properties.getMaxInboundMessageSize(), properties.getKeepAliveTimeMinutes()));
+        return properties;
+    }
+
+    private static InetSocketAddress parseAddress(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0 || separator == address.length() - 1) {
+            throw new IllegalArgumentException(String.format("%s should be in host:port format: %s", SERVER_ADDRESS, address));
+        }
+        String host = address.substring(0, separator).trim();
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid port in %s: %s", SERVER_ADDRESS, address), e);
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    private static void copyConfig(Properties config, String name, String key) {
+        int value = ConfigUtil.getInt(name, -1);
+        if (value > 0) {
+            config.setProperty(key, Integer.toString(value));
+        }
+    }
+
+    private static boolean hasIdArgument(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-i") || arg.equals("--id") || arg.startsWith("--id=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,7 +2,15 @@ package io.github.etases.edublock.cc;
 
 import io.github.etases.edublock.cc.model.Record;
 import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.util.ConfigUtil;
+import io.github.etases.edublock.cc.util.DecodeUtil;
+import io.github.etases.edublock.cc.util.HashUtil;
 import io.github.etases.edublock.cc.util.JsonUtil;
+import io.github.etases.edublock.cc.util.PayloadUtil;
+import io.github.etases.edublock.cc.util.ScoreUtil;
+import io.github.etases.edublock.cc.util.SelectorUtil;
+import io.github.etases.edublock.cc.util.ShardUtil;
+import io.github.etases.edublock.cc.util.ValidationUtil;
 import org.hyperledger.fabric.Logger;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
@@ -16,9 +24,15 @@ import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Contract(name = "EduBlockChainCode",
         info = @Info(title = "EduBlock contract",
@@ -30,6 +44,42 @@ public class EduBlockChainCode implements ContractInterface {
     private static final Logger logger = Logger.getLogger(EduBlockChainCode.class);
     private static final String RECORD_PREFIX = "record";
     private static final String PERSONAL_PREFIX = "personal";
+    private static final String AVATAR_PREFIX = "avatar";
+    private static final String CHANGELOG_PREFIX = "changelog";
+    private static final String RECORD_INDEX_PREFIX = RecordIndex.DOC_TYPE;
+    private static final String RECORD_ARCHIVE_PREFIX = "recordArchive";
+    private static final String SEALED_YEAR_PREFIX = "sealedYear";
+    private static final String IMPORT_BATCH_PREFIX = "importBatch";
+    private static final String IMPORT_CHUNK_PREFIX = "importChunk";
+    private static final String LABEL_DICTIONARY_PREFIX = "labelDictionary";
+    private static final String SUMMARY_PREFIX = "summary";
+    private static final int SHARD_PAGE_SIZE = 200;
+    private static final int MAX_RANKING_LIMIT = 1000;
+    private static final int RANKING_INITIAL_CAPACITY = 64;
+    private static final int MAX_CHANGELOG_LIMIT = 1000;
+    /**
+     * The seconds a change-log cursor is held back, for the entries committed after later-stamped ones
+     */
+    public static final String CHANGELOG_LOOKBACK_PROPERTY = "EDUBLOCK_CHANGELOG_LOOKBACK_SECONDS";
+    private static final int CHANGELOG_LOOKBACK_SECONDS = ConfigUtil.getInt(CHANGELOG_LOOKBACK_PROPERTY, 300);
+    private static final String TRANSIENT_ENCODING_SUFFIX = ".encoding";
+    private static final String TRANSIENT_CHUNKS_SUFFIX = ".chunks";
+    private static final int MAX_TRANSIENT_CHUNKS = 1024;
+    // The errors of the peer about a collection it does not let the client read: no read access, or no such collection
+    private static final List<String> COLLECTION_ERROR_MESSAGES = Arrays.asList("does not have read access permission", "could not be found");
+
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new EduBlockContext(stub);
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        if (stateBuffer != null) {
+            stateBuffer.flush();
+        }
+    }
 
     /**
      * Init the ledger
@@ -51,10 +101,9 @@ public class EduBlockChainCode implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Personal getStudentPersonal(final Context ctx, final long studentId) {
-        ChaincodeStub stub = ctx.getStub();
         String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
-        String personalState = stub.getPrivateDataUTF8(getCollectionName(ctx), personalKey);
-        if (personalState == null || personalState.isEmpty()) {
+        byte[] personalState = getPrivateData(ctx, getCollectionName(ctx), personalKey);
+        if (isEmpty(personalState)) {
             String errorMessage = String.format("Personal %d does not exist", studentId);
             logger.error(errorMessage);
             throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
@@ -70,44 +119,391 @@ public class EduBlockChainCode implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String getAllStudentPersonals(final Context ctx) {
+        return JsonUtil.serialize(new PersonalMap(getAllPersonals(ctx, getCollectionName(ctx), 0, 1)));
+    }
+
+    /**
+     * Get the student personals of a shard, split as in {@link #getStudentRecordsInShard(Context, int, int)}.
+     * The private data cannot be read from a key onwards, so the keys of the other shards are read too but not decoded.
+     *
+     * @param ctx        the transaction context
+     * @param shardIndex the shard index, from 0 to the shard count excluded
+     * @param shardCount the number of shards
+     * @return the student personals of the shard as a serialized {@link PersonalMap}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentPersonalsInShard(final Context ctx, final int shardIndex, final int shardCount) {
+        verifyShard(shardIndex, shardCount);
+        return JsonUtil.serialize(new PersonalMap(getAllPersonals(ctx, getCollectionName(ctx), shardIndex, shardCount)));
+    }
+
+    private Map<Long, Personal> getAllPersonals(final Context ctx, final String collectionName, final int shardIndex, final int shardCount) {
         ChaincodeStub stub = ctx.getStub();
         CompositeKey prefixKey = composePrefixKey(ctx, PERSONAL_PREFIX);
-        QueryResultsIterator<KeyValue> personalState = stub.getPrivateDataByPartialCompositeKey(getCollectionName(ctx), prefixKey);
-        Map<Long, Personal> personals = new HashMap<>();
+        QueryResultsIterator<KeyValue> personalState = stub.getPrivateDataByPartialCompositeKey(collectionName, prefixKey);
+        List<Long> studentIds = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
         for (KeyValue kv : personalState) {
             List<String> attributes = verifyAndGetAttributes(ctx, kv.getKey(), PERSONAL_PREFIX);
             if (attributes.size() != 1) {
                 throw newChainException(AssetErrors.ASSET_NOT_FOUND, "Invalid key");
             }
-            long studentId = Long.parseLong(attributes.get(0));
-            Personal personal = JsonUtil.deserialize(kv.getStringValue(), Personal.class);
-            personals.put(studentId, personal);
+            if (shardCount > 1 && !ShardUtil.contains(attributes.get(0), shardIndex, shardCount)) {
+                continue;
+            }
+            studentIds.add(Long.parseLong(attributes.get(0)));
+            values.add(kv.getValue());
+        }
+        List<Personal> decoded = DecodeUtil.deserializeAll(values, Personal.class);
+        Map<Long, Personal> personals = new HashMap<>();
+        for (int i = 0; i < studentIds.size(); i++) {
+            personals.put(studentIds.get(i), decoded.get(i));
+        }
+        return personals;
+    }
+
+    /**
+     * Get student personals by ids
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the found student personals as a serialized {@link PersonalMap}, with the ids not found in its missing ids
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentPersonals(final Context ctx, final String studentIds) {
+        return JsonUtil.serialize(getPersonals(ctx, getCollectionName(ctx), parseStudentIds(studentIds)));
+    }
+
+    private PersonalMap getPersonals(final Context ctx, final String collectionName, final long[] studentIds) {
+        PersonalMap personalMap = new PersonalMap(new HashMap<>());
+        for (long studentId : studentIds) {
+            String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
+            byte[] personalState = getPrivateData(ctx, collectionName, personalKey);
+            if (isEmpty(personalState)) {
+                personalMap.getMissingIds().add(studentId);
+            } else {
+                personalMap.getPersonals().put(studentId, JsonUtil.deserialize(personalState, Personal.class));
+            }
         }
-        return JsonUtil.serialize(new PersonalMap(personals));
+        return personalMap;
+    }
+
+    /**
+     * Get student personals from several collections in one call.
+     * A collection the peer refuses to read, for example a member-only-read collection of another organization, is skipped.
+     * A collection the peer is allowed to read but does not hold, as a non-member of a collection without member-only read,
+     * is skipped when reading by student ids, as the peer holds the hash of a personal it has no data for.
+     * A scan of all the personals cannot tell it apart from an empty collection, so it is returned with no personals.
+     *
+     * @param ctx             the transaction context
+     * @param collectionNames the collection names as a JSON array
+     * @param studentIds      the student ids as a JSON array, or empty to get all student personals
+     * @return the student personals of each collection as a serialized {@link CollectionPersonalMap}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentPersonalsFromCollections(final Context ctx, final String collectionNames, final String studentIds) {
+        String[] names = parseCollectionNames(collectionNames);
+        long[] ids = studentIds == null || studentIds.trim().isEmpty() ? null : parseStudentIds(studentIds);
+        CollectionPersonalMap collectionPersonalMap = new CollectionPersonalMap(new HashMap<>(), new HashMap<>());
+        for (String collectionName : names) {
+            if (collectionPersonalMap.getCollections().containsKey(collectionName) || collectionPersonalMap.getSkippedCollections().containsKey(collectionName)) {
+                continue;
+            }
+            PersonalMap personalMap;
+            try {
+                personalMap = ids == null ? new PersonalMap(getAllPersonals(ctx, collectionName, 0, 1)) : getPersonals(ctx, collectionName, ids);
+            } catch (RuntimeException exception) {
+                // Any other error, like a corrupt personal, is not about the collection
+                if (!isCollectionError(exception)) {
+                    throw exception;
+                }
+                skipCollection(collectionPersonalMap, collectionName, exception.getMessage());
+                continue;
+            }
+            if (ids != null && !isCollectionHeld(ctx, collectionName, personalMap.getMissingIds())) {
+                skipCollection(collectionPersonalMap, collectionName, "The peer is not a member of the collection");
+                continue;
+            }
+            collectionPersonalMap.getCollections().put(collectionName, personalMap);
+        }
+        return JsonUtil.serialize(collectionPersonalMap);
+    }
+
+    private static boolean isCollectionError(final RuntimeException exception) {
+        String message = exception.getMessage();
+        if (message == null) {
+            return false;
+        }
+        for (String collectionErrorMessage : COLLECTION_ERROR_MESSAGES) {
+            if (message.contains(collectionErrorMessage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check that the peer holds the data of the collection: a non-member peer has the hashes of the missing personals, not their data
+     */
+    private boolean isCollectionHeld(final Context ctx, final String collectionName, final List<Long> missingIds) {
+        for (long studentId : missingIds) {
+            String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
+            if (!isEmpty(getPrivateDataHash(ctx, collectionName, personalKey))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipCollection(final CollectionPersonalMap collectionPersonalMap, final String collectionName, final String reason) {
+        logger.warning(String.format("Skipped collection %s: %s", collectionName, reason));
+        collectionPersonalMap.getSkippedCollections().put(collectionName, reason);
+    }
+
+    /**
+     * Count the student personals
+     *
+     * @param ctx the transaction context
+     * @return the number of student personals
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public long countStudentPersonals(final Context ctx) {
+        ChaincodeStub stub = ctx.getStub();
+        return countKeys(stub.getPrivateDataByPartialCompositeKey(getCollectionName(ctx), composePrefixKey(ctx, PERSONAL_PREFIX)));
     }
 
     /**
-     * Update student personal
+     * Check which students have a personal, from the hash of the private data without reading the data itself
      *
-     * @param ctx       the transaction context, which includes the student personal in the transient map
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the existence of the personal of each student as a serialized {@link ExistenceMap}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String existsStudentPersonals(final Context ctx, final String studentIds) {
+        String collectionName = getCollectionName(ctx);
+        Map<Long, Boolean> exists = new HashMap<>();
+        for (long studentId : parseStudentIds(studentIds)) {
+            String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
+            exists.put(studentId, !isEmpty(getPrivateDataHash(ctx, collectionName, personalKey)));
+        }
+        return JsonUtil.serialize(new ExistenceMap(exists));
+    }
+
+    /**
+     * Update student personal.
+     * The avatar is stored apart under its hash, and a personal sent with only the avatar hash keeps the stored avatar.
+     *
+     * @param ctx       the transaction context, which includes the student personal and the optional expected version in the transient map
      * @param studentId the student id
+     * @return the {@link UpdateResult} as serialized string
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void updateStudentPersonal(final Context ctx, final long studentId) {
-        ChaincodeStub stub = ctx.getStub();
+    public String updateStudentPersonal(final Context ctx, final long studentId) {
         Personal personal = getValueFromTransientMap(ctx, "personal", Personal.class);
-        String personalState = JsonUtil.serialize(personal);
+        Long expectedVersion = getExpectedVersion(ctx);
+        String collectionName = getCollectionName(ctx);
         String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
-        stub.putPrivateData(getCollectionName(ctx), personalKey, personalState.getBytes(StandardCharsets.UTF_8));
+        putAvatarIfAbsent(ctx, collectionName, personal);
+
+        // The hash is enough to detect an unchanged personal without reading the private data itself,
+        // as long as the stored version is the one the client expects
+        if (expectedVersion != null) {
+            personal.setVersion(expectedVersion);
+        }
+        byte[] personalHash = HashUtil.sha256(JsonUtil.serializeToBytes(personal));
+        if (Arrays.equals(personalHash, getPrivateDataHash(ctx, collectionName, personalKey))) {
+            return JsonUtil.serialize(new UpdateResult(false, personal.getVersion()));
+        }
+
+        byte[] currentState = getPrivateData(ctx, collectionName, personalKey);
+        Personal currentPersonal = isEmpty(currentState) ? null : JsonUtil.deserialize(currentState, Personal.class);
+        long currentVersion = currentPersonal == null ? 0 : currentPersonal.getVersion();
+        verifyExpectedVersion(expectedVersion, currentVersion, String.format("Personal %d", studentId));
+        personal.setVersion(currentVersion);
+        if (personal.equals(currentPersonal)) {
+            return JsonUtil.serialize(new UpdateResult(false, currentVersion));
+        }
+        personal.setVersion(currentVersion + 1);
+        putPrivateData(ctx, collectionName, personalKey, JsonUtil.serializeToBytes(personal));
+        return JsonUtil.serialize(new UpdateResult(true, personal.getVersion()));
+    }
+
+    /**
+     * Get the avatar of the student personal, which is not included in the personal
+     *
+     * @param ctx       the transaction context
+     * @param studentId the student id
+     * @return the avatar or exception if the personal or its avatar is not found
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentAvatar(final Context ctx, final long studentId) {
+        String collectionName = getCollectionName(ctx);
+        String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
+        byte[] personalState = getPrivateData(ctx, collectionName, personalKey);
+        String avatar = isEmpty(personalState) ? null : getAvatarOrNull(ctx, collectionName, JsonUtil.deserialize(personalState, Personal.class));
+        if (avatar == null) {
+            String errorMessage = String.format("Avatar of personal %d does not exist", studentId);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
+        }
+        return avatar;
+    }
+
+    /**
+     * Move the avatar of the personal to its own key, named by its hash, and keep only the hash in the personal.
+     * An avatar already stored under its hash is the same, so it is not written again.
+     */
+    private void putAvatarIfAbsent(final Context ctx, final String collectionName, final Personal personal) {
+        if (personal.getAvatar() == null) {
+            if (personal.getAvatarHash() != null && isEmpty(getPrivateDataHash(ctx, collectionName, composeAvatarKey(ctx, personal.getAvatarHash())))) {
+                String errorMessage = String.format("Avatar %s does not exist", personal.getAvatarHash());
+                logger.error(errorMessage);
+                throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
+            }
+            return;
+        }
+        byte[] avatar = personal.getAvatar().getBytes(StandardCharsets.UTF_8);
+        String avatarHash = HashUtil.toHex(HashUtil.sha256(avatar));
+        String avatarKey = composeAvatarKey(ctx, avatarHash);
+        if (isEmpty(getPrivateDataHash(ctx, collectionName, avatarKey))) {
+            putPrivateData(ctx, collectionName, avatarKey, avatar);
+        }
+        personal.setAvatar(null);
+        personal.setAvatarHash(avatarHash);
+    }
+
+    private String getAvatarOrNull(final Context ctx, final String collectionName, final Personal personal) {
+        // Personals written before the avatars were moved out still hold their avatar
+        if (personal.getAvatar() != null || personal.getAvatarHash() == null) {
+            return personal.getAvatar();
+        }
+        byte[] avatar = getPrivateData(ctx, collectionName, composeAvatarKey(ctx, personal.getAvatarHash()));
+        return isEmpty(avatar) ? null : new String(avatar, StandardCharsets.UTF_8);
+    }
+
+    private String composeAvatarKey(final Context ctx, final String avatarHash) {
+        return composePublicKey(ctx, AVATAR_PREFIX, avatarHash).toString();
     }
 
     private Record getStudentRecordOrNull(final Context ctx, final long studentId) {
-        ChaincodeStub stub = ctx.getStub();
-        String recordState = stub.getStringState(composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString());
-        if (recordState == null || recordState.isEmpty()) {
+        Record record = getRecordOrNull(ctx, composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString());
+        return record == null ? null : assembleRecord(ctx, studentId, record);
+    }
+
+    /**
+     * Get the record stored under the key with its labels decoded, decoded once per transaction
+     */
+    private Record getRecordOrNull(final Context ctx, final String key) {
+        return getValue(ctx, key, Record.class, recordState -> deserializeRecordOrNull(ctx, recordState));
+    }
+
+    /**
+     * Put the class records of the archived years back into the record
+     */
+    private Record assembleRecord(final Context ctx, final long studentId, final Record record) {
+        if (record.getArchivedYears() == null || record.getArchivedYears().isEmpty()) {
+            return record;
+        }
+        Record assembled = Record.clone(record);
+        assembled.getClassRecords().putAll(getArchivedClassRecords(ctx, studentId, record.getArchivedYears()));
+        assembled.setArchivedYears(null);
+        return assembled;
+    }
+
+    private Map<Long, ClassRecord> getArchivedClassRecords(final Context ctx, final long studentId, final List<Integer> years) {
+        Map<Long, ClassRecord> classRecords = new HashMap<>();
+        for (int year : years) {
+            Record archive = getArchivedRecordOrNull(ctx, studentId, year);
+            if (archive != null && archive.getClassRecords() != null) {
+                classRecords.putAll(archive.getClassRecords());
+            }
+        }
+        return classRecords;
+    }
+
+    private Record getArchivedRecordOrNull(final Context ctx, final long studentId, final int year) {
+        String archiveKey = composePublicKey(ctx, RECORD_ARCHIVE_PREFIX, Long.toString(studentId), Integer.toString(year)).toString();
+        return getValue(ctx, archiveKey, Record.class, archiveState -> {
+            if (isEmpty(archiveState)) {
+                return null;
+            }
+            try (InputStream json = PayloadUtil.open(Collections.singletonList(archiveState), PayloadUtil.GZIP_ENCODING)) {
+                return decodeLabels(ctx, JsonUtil.deserialize(json, StoredRecord.class));
+            } catch (IOException exception) {
+                String errorMessage = String.format("Invalid archive of record %d for year %d", studentId, year);
+                logger.error(errorMessage);
+                throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+            }
+        });
+    }
+
+    private boolean isYearSealed(final Context ctx, final int year) {
+        return !isEmpty(getState(ctx, composePublicKey(ctx, SEALED_YEAR_PREFIX, Integer.toString(year)).toString()));
+    }
+
+    private Record deserializeRecordOrNull(final Context ctx, final byte[] recordState) {
+        if (isEmpty(recordState)) {
             return null;
         }
-        return JsonUtil.deserialize(recordState, Record.class);
+        return decodeLabels(ctx, JsonUtil.deserialize(recordState, StoredRecord.class));
+    }
+
+    private Record decodeLabels(final Context ctx, final StoredRecord record) {
+        if (!record.isLabelsEncoded()) {
+            return record.toRecord();
+        }
+        try {
+            return getLabelCodec(ctx).decode(record);
+        } catch (IllegalArgumentException exception) {
+            String errorMessage = "Invalid record: " + exception.getMessage();
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+    }
+
+    /**
+     * Put the record state with its labels replaced by the codes of the label dictionary
+     */
+    private void putRecordState(final Context ctx, final String key, final Record record, final boolean compressed) {
+        LabelCodec labelCodec = getLabelCodec(ctx);
+        // Encoded now, so that its new labels are in the dictionary put with it
+        StoredRecord encoded = labelCodec.encode(record);
+        putValue(ctx, key, record, () -> {
+            byte[] recordState = JsonUtil.serializeToBytes(encoded);
+            return compressed ? PayloadUtil.gzip(recordState) : recordState;
+        });
+        putLabelDictionaryIfChanged(ctx, labelCodec);
+    }
+
+    private void putLabelDictionaryIfChanged(final Context ctx, final LabelCodec labelCodec) {
+        if (labelCodec.isChanged()) {
+            // Saved when serialized, so a transaction adding labels to several records writes the dictionary once
+            putValue(ctx, composeLabelDictionaryKey(ctx).toString(), null, () -> JsonUtil.serializeToBytes(labelCodec.save()));
+        }
+    }
+
+    /**
+     * The dictionary is shared by the clients of the organization, so a label is coded once for all of them
+     */
+    private CompositeKey composeLabelDictionaryKey(final Context ctx) {
+        return ctx.getStub().createCompositeKey(LABEL_DICTIONARY_PREFIX, ctx.getClientIdentity().getMSPID());
+    }
+
+    /**
+     * Get the label dictionary, loaded once per transaction
+     */
+    private LabelCodec getLabelCodec(final Context ctx) {
+        EduBlockContext eduBlockContext = ctx instanceof EduBlockContext ? (EduBlockContext) ctx : null;
+        if (eduBlockContext != null && eduBlockContext.getLabelCodec() != null) {
+            return eduBlockContext.getLabelCodec();
+        }
+        byte[] dictionaryState = getState(ctx, composeLabelDictionaryKey(ctx).toString());
+        LabelCodec labelCodec = new LabelCodec(isEmpty(dictionaryState) ? null : JsonUtil.deserialize(dictionaryState, LabelDictionary.class));
+        if (eduBlockContext != null) {
+            eduBlockContext.setLabelCodec(labelCodec);
+        }
+        return labelCodec;
     }
 
     /**
@@ -128,6 +524,27 @@ public class EduBlockChainCode implements ContractInterface {
         return JsonUtil.serialize(record);
     }
 
+    /**
+     * Get student records by ids
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the found student records as a serialized {@link RecordMap}, with the ids not found in its missing ids
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentRecords(final Context ctx, final String studentIds) {
+        RecordMap recordMap = new RecordMap(new HashMap<>());
+        for (long studentId : parseStudentIds(studentIds)) {
+            Record record = getStudentRecordOrNull(ctx, studentId);
+            if (record == null) {
+                recordMap.getMissingIds().add(studentId);
+            } else {
+                recordMap.getRecords().put(studentId, record);
+            }
+        }
+        return JsonUtil.serialize(recordMap);
+    }
+
     /**
      * Get all student records
      *
@@ -138,53 +555,697 @@ public class EduBlockChainCode implements ContractInterface {
     public String getAllStudentRecords(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
         QueryResultsIterator<KeyValue> recordState = stub.getStateByPartialCompositeKey(composePrefixKey(ctx, RECORD_PREFIX));
+        List<Long> studentIds = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (KeyValue kv : recordState) {
+            studentIds.add(getRecordStudentId(ctx, kv.getKey()));
+            values.add(kv.getValue());
+        }
+        return JsonUtil.serialize(new RecordMap(assembleRecords(ctx, studentIds, values)));
+    }
+
+    /**
+     * Get the student records of a shard, so that a full export can be split into concurrent calls.
+     * The shards split the record keys into ranges, see {@link ShardUtil#getBoundary(int, int)}, and only the keys of the shard are read.
+     *
+     * @param ctx        the transaction context
+     * @param shardIndex the shard index, from 0 to the shard count excluded
+     * @param shardCount the number of shards
+     * @return the student records of the shard as a serialized {@link RecordMap}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentRecordsInShard(final Context ctx, final int shardIndex, final int shardCount) {
+        verifyShard(shardIndex, shardCount);
+        ChaincodeStub stub = ctx.getStub();
+        CompositeKey prefixKey = composePrefixKey(ctx, RECORD_PREFIX);
+        String endBoundary = ShardUtil.getBoundary(shardIndex + 1, shardCount);
+        String endKey = endBoundary == null ? null : prefixKey + endBoundary;
+        // The range starts at the bookmark, which does not need to be an existing key
+        String bookmark = shardIndex == 0 ? "" : prefixKey + ShardUtil.getBoundary(shardIndex, shardCount);
+        List<Long> studentIds = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        boolean ended = false;
+        while (!ended) {
+            QueryResultsIteratorWithMetadata<KeyValue> recordState = stub.getStateByPartialCompositeKeyWithPagination(prefixKey, SHARD_PAGE_SIZE, bookmark);
+            int fetched = 0;
+            for (KeyValue kv : recordState) {
+                if (endKey != null && kv.getKey().compareTo(endKey) >= 0) {
+                    ended = true;
+                    break;
+                }
+                studentIds.add(getRecordStudentId(ctx, kv.getKey()));
+                values.add(kv.getValue());
+                fetched++;
+            }
+            bookmark = recordState.getMetadata() == null ? "" : recordState.getMetadata().getBookmark();
+            ended = ended || fetched < SHARD_PAGE_SIZE || bookmark.isEmpty();
+        }
+        return JsonUtil.serialize(new RecordMap(assembleRecords(ctx, studentIds, values)));
+    }
+
+    private long getRecordStudentId(final Context ctx, final String key) {
+        List<String> attributes = verifyAndGetAttributes(ctx, key, RECORD_PREFIX);
+        if (attributes.size() != 1) {
+            throw newChainException(AssetErrors.ASSET_NOT_FOUND, "Invalid key");
+        }
+        return Long.parseLong(attributes.get(0));
+    }
+
+    private Map<Long, Record> assembleRecords(final Context ctx, final List<Long> studentIds, final List<byte[]> values) {
+        List<StoredRecord> decoded = DecodeUtil.deserializeAll(values, StoredRecord.class);
         Map<Long, Record> records = new HashMap<>();
+        for (int i = 0; i < studentIds.size(); i++) {
+            records.put(studentIds.get(i), assembleRecord(ctx, studentIds.get(i), decodeLabels(ctx, decoded.get(i))));
+        }
+        return records;
+    }
+
+    private void verifyShard(final int shardIndex, final int shardCount) {
+        if (shardCount < 1 || shardCount > ShardUtil.MAX_SHARD_COUNT || shardIndex < 0 || shardIndex >= shardCount) {
+            String errorMessage = String.format("Invalid shard %d of %d", shardIndex, shardCount);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+    }
+
+    /**
+     * Count the student records
+     *
+     * @param ctx the transaction context
+     * @return the number of student records
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public long countStudentRecords(final Context ctx) {
+        return countKeys(ctx.getStub().getStateByPartialCompositeKey(composePrefixKey(ctx, RECORD_PREFIX)));
+    }
+
+    /**
+     * Check which students have a record, without decoding the records
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the existence of the record of each student as a serialized {@link ExistenceMap}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String existsStudentRecords(final Context ctx, final String studentIds) {
+        Map<Long, Boolean> exists = new HashMap<>();
+        for (long studentId : parseStudentIds(studentIds)) {
+            exists.put(studentId, !isEmpty(getState(ctx, composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString())));
+        }
+        return JsonUtil.serialize(new ExistenceMap(exists));
+    }
+
+    private static long countKeys(final QueryResultsIterator<KeyValue> iterator) {
+        // The values are never decoded
+        long count = 0;
+        for (KeyValue ignored : iterator) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Rank the students by final score
+     *
+     * @param ctx       the transaction context
+     * @param limit     the number of students to return, at most 1000
+     * @param classId   the class id to rank in, or -1 for all classes
+     * @param subjectId the subject id to rank by, or -1 for the average of all subjects
+     * @param year      the year to rank in, or 0 for all years
+     * @return the best students as a serialized {@link RankingList}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getTopStudents(final Context ctx, final int limit, final long classId, final long subjectId, final int year) {
+        if (limit <= 0 || limit > MAX_RANKING_LIMIT) {
+            throw newChainException(AssetErrors.ASSET_INVALID, "Invalid limit");
+        }
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIterator<KeyValue> recordState = stub.getStateByPartialCompositeKey(composePrefixKey(ctx, RECORD_PREFIX));
+        // Worst entry on top, so the heap never holds more than the requested entries
+        Comparator<RankingEntry> worstFirst = Comparator.comparingDouble(RankingEntry::getScore)
+                .thenComparing(Comparator.comparingLong(RankingEntry::getStudentId).reversed());
+        PriorityQueue<RankingEntry> heap = new PriorityQueue<>(Math.min(limit, RANKING_INITIAL_CAPACITY) + 1, worstFirst);
         for (KeyValue kv : recordState) {
             List<String> attributes = verifyAndGetAttributes(ctx, kv.getKey(), RECORD_PREFIX);
             if (attributes.size() != 1) {
                 throw newChainException(AssetErrors.ASSET_NOT_FOUND, "Invalid key");
             }
             long studentId = Long.parseLong(attributes.get(0));
-            Record record = JsonUtil.deserialize(kv.getStringValue(), Record.class);
-            records.put(studentId, record);
+            // The ranking only reads the scores, so the labels are left as codes
+            Record record = assembleRecord(ctx, studentId, JsonUtil.deserialize(kv.getValue(), StoredRecord.class));
+            Float score = getRankingScore(record, classId, subjectId, year);
+            if (score == null) {
+                continue;
+            }
+            heap.add(new RankingEntry(studentId, score));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
         }
-        return JsonUtil.serialize(new RecordMap(records));
+        List<RankingEntry> entries = new ArrayList<>(heap);
+        entries.sort(worstFirst.reversed());
+        return JsonUtil.serialize(new RankingList(entries));
+    }
+
+    private Float getRankingScore(final Record record, final long classId, final long subjectId, final int year) {
+        if (record.getClassRecords() == null) {
+            return null;
+        }
+        // Summed in hundredths, so the same scores always give the same ranking
+        long total = 0;
+        int count = 0;
+        for (Map.Entry<Long, ClassRecord> entry : record.getClassRecords().entrySet()) {
+            ClassRecord classRecord = entry.getValue();
+            if (classRecord == null || classRecord.getSubjects() == null
+                    || (classId >= 0 && entry.getKey() != classId)
+                    || (year > 0 && classRecord.getYear() != year)) {
+                continue;
+            }
+            for (Map.Entry<Long, Subject> subjectEntry : classRecord.getSubjects().entrySet()) {
+                if (subjectEntry.getValue() != null && (subjectId < 0 || subjectEntry.getKey() == subjectId)) {
+                    total += subjectEntry.getValue().getFinalScore();
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? null : ScoreUtil.average(total, count);
     }
 
     /**
      * Update student record
      *
-     * @param ctx       the transaction context, which includes the student record in the transient map
+     * @param ctx       the transaction context, which includes the student record and the optional expected version in the transient map
      * @param studentId the student id
+     * @return the {@link UpdateResult} as serialized string
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void updateStudentRecord(final Context ctx, final long studentId) {
-        ChaincodeStub stub = ctx.getStub();
+    public String updateStudentRecord(final Context ctx, final long studentId) {
         Record record = getValueFromTransientMap(ctx, "record", Record.class);
-        String recordState = JsonUtil.serialize(record);
-        stub.putStringState(composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString(), recordState);
+        String recordKey = composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString();
+        Record currentRecord = getRecordOrNull(ctx, recordKey);
+        verifyExpectedVersion(ctx, currentRecord, studentId);
+        return JsonUtil.serialize(putRecordIfChanged(ctx, studentId, recordKey, currentRecord, record));
     }
 
     /**
      * Update student class record
      *
-     * @param ctx       the transaction context, which includes the student class record in the transient map
+     * @param ctx       the transaction context, which includes the student class record and the optional expected version in the transient map
      * @param studentId the student id
      * @param classId   the class id
+     * @return the {@link UpdateResult} as serialized string
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
-    public void updateStudentClassRecord(final Context ctx, final long studentId, final long classId) {
-        ChaincodeStub stub = ctx.getStub();
+    public String updateStudentClassRecord(final Context ctx, final long studentId, final long classId) {
         ClassRecord record = getValueFromTransientMap(ctx, "classRecord", ClassRecord.class);
-        Record studentRecord = getStudentRecordOrNull(ctx, studentId);
-        Record newRecord = Record.clone(studentRecord);
+        String recordKey = composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString();
+        Record currentRecord = getRecordOrNull(ctx, recordKey);
+        verifyExpectedVersion(ctx, currentRecord, studentId);
+        Record newRecord = Record.clone(currentRecord);
         newRecord.getClassRecords().put(classId, record);
-        String recordState = JsonUtil.serialize(newRecord);
-        stub.putStringState(composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString(), recordState);
+        return JsonUtil.serialize(putRecordIfChanged(ctx, studentId, recordKey, currentRecord, newRecord));
+    }
+
+    private UpdateResult putRecordIfChanged(final Context ctx, final long studentId, final String recordKey, final Record currentRecord, final Record record) {
+        long currentVersion = currentRecord == null ? 0 : currentRecord.getVersion();
+        // Cloning sorts the maps and fills the missing ones, so equal records are equal objects
+        Record newRecord = Record.clone(record);
+        // The archived years stay as they are whatever the submitted record holds
+        newRecord.setArchivedYears(currentRecord == null ? null : currentRecord.getArchivedYears());
+        removeArchivedClassRecords(ctx, studentId, currentRecord, newRecord);
+        verifySealedYearsUnchanged(ctx, studentId, currentRecord, newRecord);
+        newRecord.setVersion(currentVersion);
+        if (currentRecord != null && newRecord.equals(Record.clone(currentRecord))) {
+            return new UpdateResult(false, currentVersion);
+        }
+        newRecord.setVersion(currentVersion + 1);
+        putRecordState(ctx, recordKey, newRecord, false);
+        putStudentSummary(ctx, studentId, newRecord);
+        appendChangeLog(ctx, studentId);
+        putRecordIndexes(ctx, studentId, currentRecord, newRecord);
+        return new UpdateResult(true, newRecord.getVersion());
+    }
+
+    /**
+     * Drop the submitted class records that are already archived, as long as they are unchanged
+     */
+    private void removeArchivedClassRecords(final Context ctx, final long studentId, final Record currentRecord, final Record newRecord) {
+        if (currentRecord == null || currentRecord.getArchivedYears() == null || currentRecord.getArchivedYears().isEmpty()) {
+            return;
+        }
+        Map<Long, ClassRecord> currentClassRecords = currentRecord.getClassRecords() == null
+                ? Collections.emptyMap()
+                : currentRecord.getClassRecords();
+        Map<Long, ClassRecord> archivedClassRecords = null;
+        Iterator<Map.Entry<Long, ClassRecord>> iterator = newRecord.getClassRecords().entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, ClassRecord> entry = iterator.next();
+            if (currentClassRecords.containsKey(entry.getKey())) {
+                continue;
+            }
+            if (archivedClassRecords == null) {
+                archivedClassRecords = getArchivedClassRecords(ctx, studentId, currentRecord.getArchivedYears());
+            }
+            ClassRecord archivedClassRecord = archivedClassRecords.get(entry.getKey());
+            if (archivedClassRecord == null) {
+                continue;
+            }
+            if (!archivedClassRecord.equals(entry.getValue())) {
+                String errorMessage = String.format("Record %d of class %d is archived and cannot be changed", studentId, entry.getKey());
+                logger.error(errorMessage);
+                throw newChainException(AssetErrors.ASSET_SEALED, errorMessage);
+            }
+            iterator.remove();
+        }
+    }
+
+    private void verifySealedYearsUnchanged(final Context ctx, final long studentId, final Record currentRecord, final Record newRecord) {
+        // Compared in the canonical form of the new record, where missing maps are empty
+        Map<Long, ClassRecord> currentClassRecords = Record.clone(currentRecord).getClassRecords();
+        Set<Long> classIds = new HashSet<>(currentClassRecords.keySet());
+        classIds.addAll(newRecord.getClassRecords().keySet());
+        Map<Integer, Boolean> sealedYears = new HashMap<>();
+        for (Long classId : classIds) {
+            ClassRecord currentClassRecord = currentClassRecords.get(classId);
+            ClassRecord newClassRecord = newRecord.getClassRecords().get(classId);
+            if (Objects.equals(currentClassRecord, newClassRecord)) {
+                continue;
+            }
+            for (ClassRecord changedClassRecord : Arrays.asList(currentClassRecord, newClassRecord)) {
+                if (changedClassRecord != null && sealedYears.computeIfAbsent(changedClassRecord.getYear(), year -> isYearSealed(ctx, year))) {
+                    String errorMessage = String.format("Record %d of class %d is in sealed year %d", studentId, classId, changedClassRecord.getYear());
+                    logger.error(errorMessage);
+                    throw newChainException(AssetErrors.ASSET_SEALED, errorMessage);
+                }
+            }
+        }
     }
 
     /**
-     * Get the history of student record
+     * Get the class records of a student in a year
+     *
+     * @param ctx       the transaction context
+     * @param studentId the student id
+     * @param year      the year
+     * @return the student {@link Record} with the class records of the year only as serialized string or exception if not found
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentRecordByYear(final Context ctx, final long studentId, final int year) {
+        Record record = getRecordOrNull(ctx, composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString());
+        if (record == null) {
+            String errorMessage = String.format("Record %d does not exist", studentId);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
+        }
+        Record yearRecord = new Record(new TreeMap<>(), record.getVersion());
+        if (record.getArchivedYears() != null && record.getArchivedYears().contains(year)) {
+            yearRecord.getClassRecords().putAll(getArchivedClassRecords(ctx, studentId, Collections.singletonList(year)));
+        } else if (record.getClassRecords() != null) {
+            for (Map.Entry<Long, ClassRecord> entry : record.getClassRecords().entrySet()) {
+                if (entry.getValue() != null && entry.getValue().getYear() == year) {
+                    yearRecord.getClassRecords().put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return JsonUtil.serialize(yearRecord);
+    }
+
+    /**
+     * Seal a year, so that the class records of the year can no longer change
+     *
+     * @param ctx  the transaction context
+     * @param year the year
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void sealStudentRecordYear(final Context ctx, final int year) {
+        if (year <= 0) {
+            throw newChainException(AssetErrors.ASSET_INVALID, "Invalid year");
+        }
+        if (!isYearSealed(ctx, year)) {
+            ChaincodeStub stub = ctx.getStub();
+            putState(ctx, composePublicKey(ctx, SEALED_YEAR_PREFIX, Integer.toString(year)).toString(), stub.getTxId().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Get the summaries of students, with the average final score and the final classification of each year
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the found summaries as a serialized {@link StudentSummaryMap}, with the ids of the students without a record in its missing ids
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentSummaries(final Context ctx, final String studentIds) {
+        StudentSummaryMap summaryMap = new StudentSummaryMap(new HashMap<>());
+        for (long studentId : parseStudentIds(studentIds)) {
+            StudentSummary summary = getStudentSummaryOrNull(ctx, composePublicKey(ctx, SUMMARY_PREFIX, Long.toString(studentId)).toString());
+            if (summary == null) {
+                // Records written before the summaries were added are summarized on the fly
+                Record record = getStudentRecordOrNull(ctx, studentId);
+                summary = record == null ? null : summarizeRecord(ctx, studentId, record, null);
+            }
+            if (summary == null) {
+                summaryMap.getMissingIds().add(studentId);
+            } else {
+                summaryMap.getSummaries().put(studentId, summary);
+            }
+        }
+        return JsonUtil.serialize(summaryMap);
+    }
+
+    private StudentSummary getStudentSummaryOrNull(final Context ctx, final String summaryKey) {
+        return getValue(ctx, summaryKey, StudentSummary.class, summaryState -> isEmpty(summaryState) ? null : JsonUtil.deserialize(summaryState, StudentSummary.class));
+    }
+
+    /**
+     * Put the summary of a written record.
+     * The version of the record changed, so the summary did too; the current summary is only read for the archived years.
+     */
+    private void putStudentSummary(final Context ctx, final long studentId, final Record record) {
+        String summaryKey = composePublicKey(ctx, SUMMARY_PREFIX, Long.toString(studentId)).toString();
+        StudentSummary currentSummary = record.getArchivedYears() == null || record.getArchivedYears().isEmpty() ? null : getStudentSummaryOrNull(ctx, summaryKey);
+        StudentSummary summary = summarizeRecord(ctx, studentId, record, currentSummary);
+        putValue(ctx, summaryKey, summary, () -> JsonUtil.serializeToBytes(summary));
+    }
+
+    /**
+     * Summarize the record.
+     * The archived years are sealed, so their summary is kept from the current summary and only built from the archive when it is missing.
+     */
+    private StudentSummary summarizeRecord(final Context ctx, final long studentId, final Record record, final StudentSummary currentSummary) {
+        Map<Integer, YearSummary> years = StudentSummary.summarizeYears(record.getClassRecords() == null ? Collections.emptyList() : record.getClassRecords().values());
+        if (record.getArchivedYears() != null) {
+            List<Integer> missingYears = new ArrayList<>();
+            for (int year : record.getArchivedYears()) {
+                YearSummary yearSummary = currentSummary == null || currentSummary.getYears() == null ? null : currentSummary.getYears().get(year);
+                if (yearSummary == null) {
+                    missingYears.add(year);
+                } else {
+                    years.put(year, yearSummary);
+                }
+            }
+            if (!missingYears.isEmpty()) {
+                years.putAll(StudentSummary.summarizeYears(getArchivedClassRecords(ctx, studentId, missingYears).values()));
+            }
+        }
+        return StudentSummary.of(years, record.getVersion());
+    }
+
+    /**
+     * Move the class records of a sealed year out of the student records into compressed per-year entries,
+     * so that the records read and written for the other years get smaller.
+     * The records keep their version, as their content does not change.
+     *
+     * @param ctx        the transaction context
+     * @param year       the sealed year
+     * @param studentIds the student ids as a JSON array
+     * @return the number of compacted records
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int compactStudentRecords(final Context ctx, final int year, final String studentIds) {
+        if (!isYearSealed(ctx, year)) {
+            String errorMessage = String.format("Year %d is not sealed", year);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        int compacted = 0;
+        for (long studentId : parseStudentIds(studentIds)) {
+            String recordKey = composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString();
+            Record record = getRecordOrNull(ctx, recordKey);
+            if (record == null || record.getClassRecords() == null) {
+                continue;
+            }
+            Record archive = getArchivedRecordOrNull(ctx, studentId, year);
+            if (archive == null) {
+                archive = Record.clone(null);
+            }
+            boolean moved = false;
+            Iterator<Map.Entry<Long, ClassRecord>> iterator = record.getClassRecords().entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, ClassRecord> entry = iterator.next();
+                if (entry.getValue() != null && entry.getValue().getYear() == year) {
+                    archive.getClassRecords().put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                    moved = true;
+                }
+            }
+            if (!moved) {
+                continue;
+            }
+            String archiveKey = composePublicKey(ctx, RECORD_ARCHIVE_PREFIX, Long.toString(studentId), Integer.toString(year)).toString();
+            putRecordState(ctx, archiveKey, archive, true);
+            List<Integer> archivedYears = record.getArchivedYears() == null ? new ArrayList<>() : new ArrayList<>(record.getArchivedYears());
+            if (!archivedYears.contains(year)) {
+                archivedYears.add(year);
+                Collections.sort(archivedYears);
+            }
+            record.setArchivedYears(archivedYears);
+            putRecordState(ctx, recordKey, record, false);
+            compacted++;
+        }
+        return compacted;
+    }
+
+    private void putRecordIndexes(final Context ctx, final long studentId, final Record currentRecord, final Record newRecord) {
+        String mspId = ctx.getClientIdentity().getMSPID();
+        String clientId = ctx.getClientIdentity().getId();
+        Map<Long, ClassRecord> currentClassRecords = currentRecord == null || currentRecord.getClassRecords() == null
+                ? Collections.emptyMap()
+                : currentRecord.getClassRecords();
+        for (Map.Entry<Long, ClassRecord> entry : newRecord.getClassRecords().entrySet()) {
+            if (entry.getValue().equals(currentClassRecords.get(entry.getKey()))) {
+                continue;
+            }
+            RecordIndex recordIndex = RecordIndex.of(mspId, clientId, studentId, entry.getKey(), entry.getValue());
+            String indexKey = composePublicKey(ctx, RECORD_INDEX_PREFIX, Long.toString(studentId), Long.toString(entry.getKey())).toString();
+            putValue(ctx, indexKey, recordIndex, () -> JsonUtil.serializeToBytes(recordIndex));
+        }
+        for (Long classId : currentClassRecords.keySet()) {
+            if (!newRecord.getClassRecords().containsKey(classId)) {
+                delState(ctx, composePublicKey(ctx, RECORD_INDEX_PREFIX, Long.toString(studentId), Long.toString(classId)).toString());
+            }
+        }
+    }
+
+    /**
+     * Query student records with a CouchDB selector over their class records
+     *
+     * @param ctx      the transaction context
+     * @param filter   the {@link RecordFilter} as serialized string
+     * @param pageSize the maximum number of matching class records to read
+     * @param bookmark the bookmark returned by the previous call, or empty to start from the beginning
+     * @return the records of the students with a matching class record as a serialized {@link RecordPage}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryStudentRecords(final Context ctx, final String filter, final int pageSize, final String bookmark) {
+        if (pageSize <= 0) {
+            throw newChainException(AssetErrors.ASSET_INVALID, "Invalid page size");
+        }
+        RecordFilter recordFilter;
+        try {
+            recordFilter = JsonUtil.deserialize(filter, RecordFilter.class);
+        } catch (Exception exception) {
+            recordFilter = null;
+        }
+        if (recordFilter == null) {
+            String errorMessage = "Invalid filter";
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String query = SelectorUtil.buildRecordIndexQuery(ctx.getClientIdentity().getMSPID(), ctx.getClientIdentity().getId(), recordFilter);
+        QueryResultsIteratorWithMetadata<KeyValue> indexState = stub.getQueryResultWithPagination(query, pageSize, bookmark == null ? "" : bookmark);
+        Map<Long, Record> records = new HashMap<>();
+        for (KeyValue kv : indexState) {
+            RecordIndex recordIndex = JsonUtil.deserialize(kv.getValue(), RecordIndex.class);
+            if (!records.containsKey(recordIndex.getStudentId())) {
+                Record record = getStudentRecordOrNull(ctx, recordIndex.getStudentId());
+                if (record != null) {
+                    records.put(recordIndex.getStudentId(), record);
+                }
+            }
+        }
+        return JsonUtil.serialize(new RecordPage(records, indexState.getMetadata().getBookmark()));
+    }
+
+    /**
+     * Rebuild the query indexes of student records, for records written before the indexes existed
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void reindexStudentRecords(final Context ctx, final String studentIds) {
+        for (long studentId : parseStudentIds(studentIds)) {
+            Record record = getStudentRecordOrNull(ctx, studentId);
+            if (record != null && record.getClassRecords() != null) {
+                putRecordIndexes(ctx, studentId, null, record);
+            }
+        }
+    }
+
+    /**
+     * Rewrite student records in their canonical form, for records written while the scores were floats
+     * or before the labels were encoded with the label dictionary, and write their missing summaries.
+     * The content is the same once the record is read back, so the version, the change log and the indexes are kept.
+     *
+     * @param ctx        the transaction context
+     * @param studentIds the student ids as a JSON array
+     * @return the number of students whose record or summary was written
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int migrateStudentRecords(final Context ctx, final String studentIds) {
+        LabelCodec labelCodec = getLabelCodec(ctx);
+        int migrated = 0;
+        for (long studentId : parseStudentIds(studentIds)) {
+            String recordKey = composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString();
+            byte[] recordState = getState(ctx, recordKey);
+            Record record = deserializeRecordOrNull(ctx, recordState);
+            if (record == null) {
+                continue;
+            }
+            byte[] canonicalState = JsonUtil.serializeToBytes(labelCodec.encode(record));
+            String summaryKey = composePublicKey(ctx, SUMMARY_PREFIX, Long.toString(studentId)).toString();
+            StudentSummary currentSummary = getStudentSummaryOrNull(ctx, summaryKey);
+            StudentSummary summary = summarizeRecord(ctx, studentId, record, currentSummary);
+            boolean changed = false;
+            if (!summary.equals(currentSummary)) {
+                putValue(ctx, summaryKey, summary, () -> JsonUtil.serializeToBytes(summary));
+                changed = true;
+            }
+            if (!Arrays.equals(canonicalState, recordState)) {
+                putState(ctx, recordKey, canonicalState);
+                changed = true;
+            }
+            if (changed) {
+                migrated++;
+            }
+        }
+        putLabelDictionaryIfChanged(ctx, labelCodec);
+        return migrated;
+    }
+
+    /**
+     * Create a bulk import batch, or do nothing if it already exists with the same chunk count
+     *
+     * @param ctx        the transaction context
+     * @param batchId    the batch id
+     * @param chunkCount the number of chunks in the batch
+     * @return the {@link ImportBatch} as serialized string
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String createImportBatch(final Context ctx, final String batchId, final int chunkCount) {
+        if (batchId == null || batchId.isEmpty() || chunkCount <= 0) {
+            String errorMessage = "Invalid import batch";
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        String batchKey = composePublicKey(ctx, IMPORT_BATCH_PREFIX, batchId).toString();
+        byte[] batchState = getState(ctx, batchKey);
+        if (!isEmpty(batchState)) {
+            ImportBatch batch = JsonUtil.deserialize(batchState, ImportBatch.class);
+            if (batch.getChunkCount() != chunkCount) {
+                String errorMessage = String.format("Import batch %s already exists with %d chunks", batchId, batch.getChunkCount());
+                logger.error(errorMessage);
+                throw newChainException(AssetErrors.ASSET_ALREADY_EXISTS, errorMessage);
+            }
+            return JsonUtil.serialize(batch);
+        }
+        ImportBatch batch = new ImportBatch(batchId, chunkCount);
+        putState(ctx, batchKey, JsonUtil.serializeToBytes(batch));
+        return JsonUtil.serialize(batch);
+    }
+
+    /**
+     * Apply a chunk of a bulk import batch, merging its class records into the student records.
+     * A chunk is applied once, so a failed import can be resumed by submitting the chunks again.
+     * Each chunk has its own progress key, so chunks with disjoint students can be submitted in parallel.
+     *
+     * @param ctx        the transaction context, which includes the chunk as a {@link RecordMap} in the "records" key of the transient map
+     * @param batchId    the batch id
+     * @param chunkIndex the chunk index, from 0
+     * @return the {@link ImportChunkResult} as serialized string
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String importStudentRecords(final Context ctx, final String batchId, final int chunkIndex) {
+        ImportBatch batch = getImportBatch(ctx, batchId);
+        if (chunkIndex < 0 || chunkIndex >= batch.getChunkCount()) {
+            String errorMessage = String.format("Import batch %s has no chunk %d", batchId, chunkIndex);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String chunkKey = composePublicKey(ctx, IMPORT_CHUNK_PREFIX, batchId, formatChunkIndex(chunkIndex)).toString();
+        if (!isEmpty(getState(ctx, chunkKey))) {
+            return JsonUtil.serialize(new ImportChunkResult(false, 0));
+        }
+        RecordMap chunk = getValueFromTransientMap(ctx, "records", RecordMap.class);
+        int changedRecords = 0;
+        if (chunk.getRecords() != null) {
+            for (Map.Entry<Long, Record> entry : chunk.getRecords().entrySet()) {
+                long studentId = entry.getKey();
+                String recordKey = composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString();
+                Record currentRecord = getRecordOrNull(ctx, recordKey);
+                Record newRecord = Record.clone(currentRecord);
+                if (entry.getValue() != null && entry.getValue().getClassRecords() != null) {
+                    newRecord.getClassRecords().putAll(entry.getValue().getClassRecords());
+                }
+                if (putRecordIfChanged(ctx, studentId, recordKey, currentRecord, newRecord).isChanged()) {
+                    changedRecords++;
+                }
+            }
+        }
+        putState(ctx, chunkKey, stub.getTxId().getBytes(StandardCharsets.UTF_8));
+        return JsonUtil.serialize(new ImportChunkResult(true, changedRecords));
+    }
+
+    /**
+     * Get the progress of a bulk import batch
+     *
+     * @param ctx     the transaction context
+     * @param batchId the batch id
+     * @return the {@link ImportStatus} as serialized string
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getImportBatchStatus(final Context ctx, final String batchId) {
+        ImportBatch batch = getImportBatch(ctx, batchId);
+        ChaincodeStub stub = ctx.getStub();
+        BitSet applied = new BitSet(batch.getChunkCount());
+        QueryResultsIterator<KeyValue> chunkState = stub.getStateByPartialCompositeKey(composePublicKey(ctx, IMPORT_CHUNK_PREFIX, batchId));
+        for (KeyValue kv : chunkState) {
+            List<String> attributes = verifyAndGetAttributes(ctx, kv.getKey(), IMPORT_CHUNK_PREFIX);
+            if (attributes.size() != 2) {
+                throw newChainException(AssetErrors.ASSET_INVALID, "Invalid key");
+            }
+            applied.set(Integer.parseInt(attributes.get(1)));
+        }
+        List<Integer> missingChunks = new ArrayList<>();
+        for (int i = applied.nextClearBit(0); i < batch.getChunkCount(); i = applied.nextClearBit(i + 1)) {
+            missingChunks.add(i);
+        }
+        int appliedChunks = batch.getChunkCount() - missingChunks.size();
+        return JsonUtil.serialize(new ImportStatus(batchId, batch.getChunkCount(), appliedChunks, missingChunks, missingChunks.isEmpty()));
+    }
+
+    private ImportBatch getImportBatch(final Context ctx, final String batchId) {
+        byte[] batchState = getState(ctx, composePublicKey(ctx, IMPORT_BATCH_PREFIX, batchId).toString());
+        if (isEmpty(batchState)) {
+            String errorMessage = String.format("Import batch %s does not exist", batchId);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
+        }
+        return JsonUtil.deserialize(batchState, ImportBatch.class);
+    }
+
+    private static String formatChunkIndex(final int chunkIndex) {
+        // Zero-padded so that the progress keys scan in chunk order
+        return String.format("%010d", chunkIndex);
+    }
+
+    /**
+     * Get the history of student record.
+     * The history only covers the live record: the class records of the years compacted by {@link #compactStudentRecords}
+     * are in their archives, so they are missing from the entries written after the compaction.
      *
      * @param ctx       the transaction context
      * @param studentId the student id
@@ -192,17 +1253,253 @@ public class EduBlockChainCode implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String getStudentRecordHistory(final Context ctx, final long studentId) {
+        return JsonUtil.serialize(new RecordHistoryList(getStudentRecordHistories(ctx, studentId)));
+    }
+
+    private List<RecordHistory> getStudentRecordHistories(final Context ctx, final long studentId) {
         ChaincodeStub stub = ctx.getStub();
         QueryResultsIterator<KeyModification> iterator = stub.getHistoryForKey(composePublicKey(ctx, RECORD_PREFIX, Long.toString(studentId)).toString());
         List<RecordHistory> histories = new ArrayList<>();
         for (KeyModification keyModification : iterator) {
             RecordHistory history = new RecordHistory();
             history.setTimestamp(Date.from(keyModification.getTimestamp()));
-            history.setRecord(JsonUtil.deserialize(keyModification.getStringValue(), Record.class));
+            // The dictionary only grows, so the current one decodes every past state
+            Record record = decodeLabels(ctx, JsonUtil.deserialize(keyModification.getValue(), StoredRecord.class));
+            // The archived years are internal, as for the assembled record
+            record.setArchivedYears(null);
+            history.setRecord(record);
             history.setUpdatedBy(keyModification.getTxId());
             histories.add(history);
         }
-        return JsonUtil.serialize(new RecordHistoryList(histories));
+        return histories;
+    }
+
+    /**
+     * Get the student personal and record in one call
+     *
+     * @param ctx            the transaction context
+     * @param studentId      the student id
+     * @param includeAvatar  whether to include the avatar of the personal
+     * @param includeHistory whether to include the history of the record
+     * @return the {@link StudentProfile} as serialized string or exception if neither the personal nor the record exists
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getStudentProfile(final Context ctx, final long studentId, final boolean includeAvatar, final boolean includeHistory) {
+        String collectionName = getCollectionName(ctx);
+        String personalKey = composePublicKey(ctx, PERSONAL_PREFIX, Long.toString(studentId)).toString();
+        byte[] personalState = getPrivateData(ctx, collectionName, personalKey);
+        Personal personal = isEmpty(personalState) ? null : JsonUtil.deserialize(personalState, Personal.class);
+        Record record = getStudentRecordOrNull(ctx, studentId);
+        if (personal == null && record == null) {
+            String errorMessage = String.format("Student %d does not exist", studentId);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
+        }
+        if (personal != null) {
+            personal.setAvatar(includeAvatar ? getAvatarOrNull(ctx, collectionName, personal) : null);
+        }
+        List<RecordHistory> histories = includeHistory ? getStudentRecordHistories(ctx, studentId) : null;
+        return JsonUtil.serialize(new StudentProfile(personal, record, histories));
+    }
+
+    /**
+     * Get the records modified after the cursor, in change-log order.
+     * The entries are ordered by the transaction timestamp, which the client sets at proposal time,
+     * so an entry can be committed after entries stamped later than it.
+     * The returned bookmark is held back to the lookback window before the current time, so such an entry is still read by the next call,
+     * as long as it commits within the window; the records in the window are returned again, and consumers must de-duplicate them by version.
+     * A full page moves the bookmark to its last entry, so the lookback only covers the window when it fits in the last page.
+     *
+     * @param ctx    the transaction context
+     * @param cursor the bookmark returned by the previous call, or empty to start from the beginning
+     * @param limit  the maximum number of change-log entries to read, at most 1000
+     * @return the affected student records as a serialized {@link RecordPage}
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getRecordsModifiedSince(final Context ctx, final String cursor, final int limit) {
+        if (limit <= 0 || limit > MAX_CHANGELOG_LIMIT) {
+            throw newChainException(AssetErrors.ASSET_INVALID, "Invalid limit");
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String bookmark = cursor == null ? "" : cursor;
+        // The bookmark is the last consumed entry, which the range starts from, so read one more entry and skip it
+        QueryResultsIteratorWithMetadata<KeyValue> changeLogState = stub.getStateByPartialCompositeKeyWithPagination(composePrefixKey(ctx, CHANGELOG_PREFIX), limit + 1, bookmark);
+        Map<Long, Record> records = new HashMap<>();
+        String lastKey = bookmark;
+        int count = 0;
+        for (KeyValue kv : changeLogState) {
+            if (kv.getKey().equals(bookmark)) {
+                continue;
+            }
+            if (count >= limit) {
+                break;
+            }
+            List<String> attributes = verifyAndGetAttributes(ctx, kv.getKey(), CHANGELOG_PREFIX);
+            if (attributes.size() != 2) {
+                throw newChainException(AssetErrors.ASSET_NOT_FOUND, "Invalid key");
+            }
+            long studentId = Long.parseLong(attributes.get(1));
+            if (!records.containsKey(studentId)) {
+                Record record = getStudentRecordOrNull(ctx, studentId);
+                if (record != null) {
+                    records.put(studentId, record);
+                }
+            }
+            lastKey = kv.getKey();
+            count++;
+        }
+        return JsonUtil.serialize(new RecordPage(records, getChangeLogBookmark(ctx, bookmark, lastKey, count >= limit)));
+    }
+
+    /**
+     * Hold the bookmark of the last page back to the start of the lookback window, without moving it back past the cursor.
+     * A full page is followed by more entries, so its bookmark is the last entry and the next page continues from it.
+     */
+    private String getChangeLogBookmark(final Context ctx, final String bookmark, final String lastKey, final boolean full) {
+        if (full) {
+            return lastKey;
+        }
+        Instant horizon = ctx.getStub().getTxTimestamp().minusSeconds(CHANGELOG_LOOKBACK_SECONDS);
+        // Without the entry key part, so it sorts before every entry of its time
+        String horizonKey = composePublicKey(ctx, CHANGELOG_PREFIX, toChangeLogSequence(horizon.isBefore(Instant.EPOCH) ? Instant.EPOCH : horizon)).toString();
+        if (lastKey.compareTo(horizonKey) < 0) {
+            return lastKey;
+        }
+        return horizonKey.compareTo(bookmark) > 0 ? horizonKey : bookmark;
+    }
+
+    void appendChangeLog(Context ctx, long studentId) {
+        ChaincodeStub stub = ctx.getStub();
+        String sequence = toChangeLogSequence(stub.getTxTimestamp());
+        String changeLogKey = composePublicKey(ctx, CHANGELOG_PREFIX, sequence, Long.toString(studentId)).toString();
+        putState(ctx, changeLogKey, stub.getTxId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toChangeLogSequence(final Instant timestamp) {
+        // Zero-padded so that the lexical order of the keys follows the transaction time
+        return String.format("%019d", timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano());
+    }
+
+    long[] parseStudentIds(final String studentIds) {
+        long[] ids;
+        try {
+            ids = JsonUtil.deserialize(studentIds, long[].class);
+        } catch (Exception exception) {
+            ids = null;
+        }
+        if (ids == null) {
+            String errorMessage = "Invalid student ids";
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        return ids;
+    }
+
+    String[] parseCollectionNames(final String collectionNames) {
+        String[] names;
+        try {
+            names = JsonUtil.deserialize(collectionNames, String[].class);
+        } catch (Exception exception) {
+            names = null;
+        }
+        if (names == null || Arrays.stream(names).anyMatch(name -> name == null || name.isEmpty())) {
+            String errorMessage = "Invalid collection names";
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        return names;
+    }
+
+    Long getExpectedVersion(final Context ctx) {
+        byte[] expectedVersionBytes = ctx.getStub().getTransient().get("expectedVersion");
+        if (expectedVersionBytes == null || expectedVersionBytes.length == 0) {
+            return null;
+        }
+        try {
+            return Long.parseLong(new String(expectedVersionBytes, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException exception) {
+            throw newChainException(AssetErrors.ASSET_INVALID, "Invalid expected version");
+        }
+    }
+
+    private void verifyExpectedVersion(final Context ctx, final Record currentRecord, final long studentId) {
+        long currentVersion = currentRecord == null ? 0 : currentRecord.getVersion();
+        verifyExpectedVersion(getExpectedVersion(ctx), currentVersion, String.format("Record %d", studentId));
+    }
+
+    private void verifyExpectedVersion(final Long expectedVersion, final long currentVersion, final String assetName) {
+        if (expectedVersion != null && expectedVersion != currentVersion) {
+            String errorMessage = String.format("%s is at version %d, expected %d", assetName, currentVersion, expectedVersion);
+            logger.error(errorMessage);
+            throw newChainException(AssetErrors.ASSET_VERSION_MISMATCH, errorMessage);
+        }
+    }
+
+    private static boolean isEmpty(final byte[] state) {
+        return state == null || state.length == 0;
+    }
+
+    /**
+     * Get the transaction state buffer, or null to access the stub directly
+     */
+    StateBuffer getStateBuffer(final Context ctx) {
+        return ctx instanceof EduBlockContext ? ((EduBlockContext) ctx).getStateBuffer() : null;
+    }
+
+    byte[] getState(final Context ctx, final String key) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        return stateBuffer == null ? ctx.getStub().getState(key) : stateBuffer.getState(key);
+    }
+
+    void putState(final Context ctx, final String key, final byte[] value) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        if (stateBuffer == null) {
+            ctx.getStub().putState(key, value);
+        } else {
+            stateBuffer.putState(key, value);
+        }
+    }
+
+    void delState(final Context ctx, final String key) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        if (stateBuffer == null) {
+            ctx.getStub().delState(key);
+        } else {
+            stateBuffer.delState(key);
+        }
+    }
+
+    <T> T getValue(final Context ctx, final String key, final Class<T> type, final Function<byte[], T> deserializer) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        return stateBuffer == null ? deserializer.apply(ctx.getStub().getState(key)) : stateBuffer.getValue(key, type, deserializer);
+    }
+
+    void putValue(final Context ctx, final String key, final Object value, final Supplier<byte[]> serializer) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        if (stateBuffer == null) {
+            ctx.getStub().putState(key, serializer.get());
+        } else {
+            stateBuffer.putValue(key, value, serializer);
+        }
+    }
+
+    byte[] getPrivateData(final Context ctx, final String collectionName, final String key) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        return stateBuffer == null ? ctx.getStub().getPrivateData(collectionName, key) : stateBuffer.getPrivateData(collectionName, key);
+    }
+
+    byte[] getPrivateDataHash(final Context ctx, final String collectionName, final String key) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        return stateBuffer == null ? ctx.getStub().getPrivateDataHash(collectionName, key) : stateBuffer.getPrivateDataHash(collectionName, key);
+    }
+
+    void putPrivateData(final Context ctx, final String collectionName, final String key, final byte[] value) {
+        StateBuffer stateBuffer = getStateBuffer(ctx);
+        if (stateBuffer == null) {
+            ctx.getStub().putPrivateData(collectionName, key, value);
+        } else {
+            stateBuffer.putPrivateData(collectionName, key, value);
+        }
     }
 
     ChaincodeException newChainException(AssetErrors error, String message) {
@@ -251,30 +1548,78 @@ public class EduBlockChainCode implements ContractInterface {
         return attributes.subList(2, attributes.size());
     }
 
+    /**
+     * Get the value of the transient key.
+     * The value is either in the key itself or split in "key.0" to "key.{n-1}" with n in "key.chunks",
+     * and is gzip-compressed when "key.encoding" is "gzip".
+     */
     <T> T getValueFromTransientMap(final Context ctx, String transientKey, Class<T> clazz) {
         ChaincodeStub stub = ctx.getStub();
         Map<String, byte[]> transientMap = stub.getTransient();
-        if (!transientMap.containsKey(transientKey)) {
+        List<byte[]> chunks = getTransientChunks(transientMap, transientKey);
+        byte[] encodingBytes = transientMap.get(transientKey + TRANSIENT_ENCODING_SUFFIX);
+        String encoding = encodingBytes == null ? null : new String(encodingBytes, StandardCharsets.UTF_8).trim();
+
+        T t;
+        // Streamed from the chunks and checked against the limits while it is deserialized
+        try (InputStream json = PayloadUtil.open(chunks, encoding)) {
+            t = ValidationUtil.deserialize(json, clazz);
+        } catch (Exception exception) {
+            String errorMessage = String.format("Invalid input in \"%s\": %s", transientKey, exception.getMessage());
+            logger.error(errorMessage + ", input: " + getTransientExcerpt(chunks, encoding));
+            throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+        }
+        return t;
+    }
+
+    private String getTransientExcerpt(final List<byte[]> chunks, final String encoding) {
+        try (InputStream json = PayloadUtil.open(chunks, encoding)) {
+            return ValidationUtil.excerpt(json);
+        } catch (IOException exception) {
+            return "unreadable (" + exception.getMessage() + ")";
+        }
+    }
+
+    private List<byte[]> getTransientChunks(final Map<String, byte[]> transientMap, final String transientKey) {
+        byte[] value = transientMap.get(transientKey);
+        if (value != null) {
+            return Collections.singletonList(value);
+        }
+        byte[] chunkCountBytes = transientMap.get(transientKey + TRANSIENT_CHUNKS_SUFFIX);
+        if (chunkCountBytes == null) {
             String errorMessage = "The transient map is missing \"" + transientKey + "\"";
             logger.error(errorMessage);
             throw newChainException(AssetErrors.ASSET_NOT_FOUND, errorMessage);
         }
-
-        String json = new String(transientMap.get(transientKey), StandardCharsets.UTF_8);
-        T t;
+        int chunkCount;
         try {
-            t = JsonUtil.deserialize(json, clazz);
-        } catch (Exception exception) {
-            String errorMessage = String.format("Invalid input: %s", json);
+            chunkCount = Integer.parseInt(new String(chunkCountBytes, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException exception) {
+            chunkCount = -1;
+        }
+        if (chunkCount <= 0 || chunkCount > MAX_TRANSIENT_CHUNKS) {
+            String errorMessage = String.format("Invalid chunk count for \"%s\"", transientKey);
             logger.error(errorMessage);
             throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
         }
-        return t;
+        List<byte[]> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            byte[] chunk = transientMap.get(transientKey + "." + i);
+            if (chunk == null) {
+                String errorMessage = String.format("The transient map is missing chunk %d of \"%s\"", i, transientKey);
+                logger.error(errorMessage);
+                throw newChainException(AssetErrors.ASSET_INVALID, errorMessage);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
     }
 
     enum AssetErrors {
         ASSET_NOT_FOUND,
         ASSET_ALREADY_EXISTS,
-        ASSET_INVALID
+        ASSET_INVALID,
+        ASSET_VERSION_MISMATCH,
+        ASSET_SEALED
     }
 }
@@ -0,0 +1,29 @@
+package io.github.etases.edublock.cc;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * The transaction context, holding what is loaded once per transaction and the writes to do at its end
+ */
+public class EduBlockContext extends Context {
+    private final StateBuffer stateBuffer;
+    private LabelCodec labelCodec;
+
+    public EduBlockContext(ChaincodeStub stub) {
+        super(stub);
+        this.stateBuffer = new StateBuffer(stub);
+    }
+
+    StateBuffer getStateBuffer() {
+        return stateBuffer;
+    }
+
+    LabelCodec getLabelCodec() {
+        return labelCodec;
+    }
+
+    void setLabelCodec(LabelCodec labelCodec) {
+        this.labelCodec = labelCodec;
+    }
+}
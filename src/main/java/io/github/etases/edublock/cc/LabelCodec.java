@@ -0,0 +1,123 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.model.Record;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the subject names and the classification labels of a record with the codes of the label dictionary, and back
+ */
+final class LabelCodec {
+    private final List<String> labels;
+    private final List<String> codes = new ArrayList<>();
+    private final Map<String, String> codesByLabel = new HashMap<>();
+    private boolean changed;
+
+    LabelCodec(LabelDictionary dictionary) {
+        labels = dictionary == null || dictionary.getLabels() == null ? new ArrayList<>() : new ArrayList<>(dictionary.getLabels());
+        for (int code = 0; code < labels.size(); code++) {
+            String codeString = Integer.toString(code);
+            codes.add(codeString);
+            codesByLabel.put(labels.get(code), codeString);
+        }
+    }
+
+    /**
+     * Whether labels were added since the dictionary was loaded or saved
+     */
+    boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Get the dictionary to save, and consider it saved
+     */
+    LabelDictionary save() {
+        changed = false;
+        return new LabelDictionary(new ArrayList<>(labels));
+    }
+
+    /**
+     * Get a copy of the record with its labels replaced by codes, adding the new labels to the dictionary
+     */
+    StoredRecord encode(Record record) {
+        StoredRecord encoded = new StoredRecord(Record.clone(record), true);
+        for (ClassRecord classRecord : encoded.getClassRecords().values()) {
+            for (Subject subject : classRecord.getSubjects().values()) {
+                subject.setName(encode(subject.getName()));
+            }
+            Classification classification = classRecord.getClassification();
+            classification.setFirstHalfClassify(encode(classification.getFirstHalfClassify()));
+            classification.setSecondHalfClassify(encode(classification.getSecondHalfClassify()));
+            classification.setFinalClassify(encode(classification.getFinalClassify()));
+        }
+        return encoded;
+    }
+
+    /**
+     * Replace the codes of the record by their labels, in place, and get it without its storage properties
+     *
+     * @throws IllegalArgumentException if a code is not in the dictionary
+     */
+    Record decode(StoredRecord record) {
+        if (!record.isLabelsEncoded()) {
+            return record.toRecord();
+        }
+        if (record.getClassRecords() != null) {
+            for (ClassRecord classRecord : record.getClassRecords().values()) {
+                if (classRecord == null) {
+                    continue;
+                }
+                if (classRecord.getSubjects() != null) {
+                    for (Subject subject : classRecord.getSubjects().values()) {
+                        if (subject != null) {
+                            subject.setName(decode(subject.getName()));
+                        }
+                    }
+                }
+                Classification classification = classRecord.getClassification();
+                if (classification != null) {
+                    classification.setFirstHalfClassify(decode(classification.getFirstHalfClassify()));
+                    classification.setSecondHalfClassify(decode(classification.getSecondHalfClassify()));
+                    classification.setFinalClassify(decode(classification.getFinalClassify()));
+                }
+            }
+        }
+        return record.toRecord();
+    }
+
+    private String encode(String label) {
+        if (label == null) {
+            return null;
+        }
+        String code = codesByLabel.get(label);
+        if (code == null) {
+            code = Integer.toString(labels.size());
+            labels.add(label);
+            codes.add(code);
+            codesByLabel.put(label, code);
+            changed = true;
+        }
+        return code;
+    }
+
+    private String decode(String code) {
+        if (code == null) {
+            return null;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(code);
+        } catch (NumberFormatException e) {
+            index = -1;
+        }
+        if (index < 0 || index >= labels.size()) {
+            throw new IllegalArgumentException("Unknown label code: " + code);
+        }
+        return labels.get(index);
+    }
+}
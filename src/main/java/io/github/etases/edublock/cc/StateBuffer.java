@@ -0,0 +1,177 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.util.HashUtil;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Holds the world state and private data of a transaction until its end, so that its reads see its own writes,
+ * a key is read and decoded once, and a key written several times is only serialized and written once.
+ * The values returned are shared for the rest of the transaction, so they are only changed to be put back.
+ * Range and history queries still read the ledger only.
+ */
+final class StateBuffer {
+    private final ChaincodeStub stub;
+    private final Map<String, Entry> worldState = new LinkedHashMap<>();
+    // By collection name
+    private final Map<String, Map<String, Entry>> privateData = new LinkedHashMap<>();
+
+    StateBuffer(ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    /**
+     * Get the pending value of the key, or its value in the ledger if it has no pending write
+     */
+    byte[] getState(String key) {
+        return getWorldStateEntry(key).getState();
+    }
+
+    /**
+     * Get the decoded value of the key, decoding its state only the first time
+     *
+     * @param deserializer decodes the state, null if the key does not exist
+     * @return the decoded value, or what the deserializer returns for a missing key
+     */
+    <T> T getValue(String key, Class<T> type, Function<byte[], T> deserializer) {
+        Entry entry = getWorldStateEntry(key);
+        if (type.isInstance(entry.value)) {
+            return type.cast(entry.value);
+        }
+        T value = deserializer.apply(entry.getState());
+        entry.value = value;
+        return value;
+    }
+
+    void putState(String key, byte[] value) {
+        worldState.put(key, Entry.written(null, value, null));
+    }
+
+    /**
+     * Put the value, serialized only if it is read as bytes or when flushed
+     *
+     * @param value      the decoded value, served to the reads of its type
+     * @param serializer serializes the value, later on, so the value must not change once put
+     */
+    void putValue(String key, Object value, Supplier<byte[]> serializer) {
+        worldState.put(key, Entry.written(value, null, serializer));
+    }
+
+    void delState(String key) {
+        worldState.put(key, Entry.deleted());
+    }
+
+    byte[] getPrivateData(String collectionName, String key) {
+        Map<String, Entry> collection = getCollection(collectionName);
+        Entry entry = collection.get(key);
+        if (entry == null) {
+            entry = Entry.read(stub.getPrivateData(collectionName, key));
+            collection.put(key, entry);
+        }
+        return entry.getState();
+    }
+
+    /**
+     * Get the hash of the pending value of the key, or the hash held by the ledger if it has no pending write
+     */
+    byte[] getPrivateDataHash(String collectionName, String key) {
+        Entry entry = getCollection(collectionName).get(key);
+        if (entry == null || !entry.written) {
+            return stub.getPrivateDataHash(collectionName, key);
+        }
+        byte[] state = entry.getState();
+        return state == null ? null : HashUtil.sha256(state);
+    }
+
+    void putPrivateData(String collectionName, String key, byte[] value) {
+        getCollection(collectionName).put(key, Entry.written(null, value, null));
+    }
+
+    /**
+     * Write the pending values to the stub, the last value of each key only, and forget the values read
+     *
+     * @return the number of written keys
+     */
+    int flush() {
+        int written = 0;
+        for (Map.Entry<String, Entry> entry : worldState.entrySet()) {
+            if (!entry.getValue().written) {
+                continue;
+            }
+            if (entry.getValue().deleted) {
+                stub.delState(entry.getKey());
+            } else {
+                stub.putState(entry.getKey(), entry.getValue().getState());
+            }
+            written++;
+        }
+        for (Map.Entry<String, Map<String, Entry>> collection : privateData.entrySet()) {
+            for (Map.Entry<String, Entry> entry : collection.getValue().entrySet()) {
+                if (!entry.getValue().written) {
+                    continue;
+                }
+                stub.putPrivateData(collection.getKey(), entry.getKey(), entry.getValue().getState());
+                written++;
+            }
+        }
+        worldState.clear();
+        privateData.clear();
+        return written;
+    }
+
+    private Entry getWorldStateEntry(String key) {
+        Entry entry = worldState.get(key);
+        if (entry == null) {
+            entry = Entry.read(stub.getState(key));
+            worldState.put(key, entry);
+        }
+        return entry;
+    }
+
+    private Map<String, Entry> getCollection(String collectionName) {
+        return privateData.computeIfAbsent(collectionName, name -> new LinkedHashMap<>());
+    }
+
+    private static final class Entry {
+        private final boolean written;
+        private final boolean deleted;
+        private Object value;
+        private byte[] state;
+        private Supplier<byte[]> serializer;
+
+        private Entry(boolean written, boolean deleted, Object value, byte[] state, Supplier<byte[]> serializer) {
+            this.written = written;
+            this.deleted = deleted;
+            this.value = value;
+            this.state = state;
+            this.serializer = serializer;
+        }
+
+        private static Entry read(byte[] state) {
+            return new Entry(false, false, null, state, null);
+        }
+
+        private static Entry written(Object value, byte[] state, Supplier<byte[]> serializer) {
+            return new Entry(true, false, value, state, serializer);
+        }
+
+        private static Entry deleted() {
+            return new Entry(true, true, null, null, null);
+        }
+
+        private byte[] getState() {
+            if (deleted) {
+                return null;
+            }
+            if (state == null && serializer != null) {
+                state = serializer.get();
+                serializer = null;
+            }
+            return state;
+        }
+    }
+}
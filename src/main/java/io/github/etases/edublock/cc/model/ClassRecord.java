@@ -5,8 +5,8 @@ import lombok.experimental.FieldDefaults;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Getter
 @Setter
@@ -30,12 +30,12 @@ public class ClassRecord {
     public static ClassRecord clone(ClassRecord classRecord) {
         if (classRecord == null) {
             var clone = new ClassRecord();
-            clone.setSubjects(new HashMap<>());
+            clone.setSubjects(new TreeMap<>());
             clone.setClassification(new Classification());
             return clone;
         }
         Classification cloneClassification = Classification.clone(classRecord.getClassification());
-        var cloneSubjects = new HashMap<Long, Subject>();
+        var cloneSubjects = new TreeMap<Long, Subject>();
         if (classRecord.getSubjects() != null) {
             for (var entry : classRecord.getSubjects().entrySet()) {
                 cloneSubjects.put(entry.getKey(), Subject.clone(entry.getValue()));
@@ -0,0 +1,22 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class CollectionPersonalMap {
+    @Property
+    Map<String, PersonalMap> collections; // the personals read from each collection, by collection name
+    @Property
+    Map<String, String> skippedCollections; // the error of each collection that could not be read, by collection name
+}
@@ -0,0 +1,20 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class ExistenceMap {
+    @Property
+    Map<Long, Boolean> exists; // key : student id
+}
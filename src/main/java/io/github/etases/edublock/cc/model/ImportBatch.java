@@ -0,0 +1,20 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class ImportBatch {
+    @Property
+    String batchId;
+    @Property
+    int chunkCount; // the chunks are numbered from 0 to chunkCount - 1
+}
@@ -0,0 +1,20 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class ImportChunkResult {
+    @Property
+    boolean applied; // false if the chunk was already applied and nothing was written
+    @Property
+    int changedRecords; // the number of records the chunk changed
+}
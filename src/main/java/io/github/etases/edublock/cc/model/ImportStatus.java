@@ -0,0 +1,28 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.List;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class ImportStatus {
+    @Property
+    String batchId;
+    @Property
+    int chunkCount;
+    @Property
+    int appliedChunks;
+    @Property
+    List<Integer> missingChunks; // the chunks not applied yet, in order
+    @Property
+    boolean complete; // true once every chunk is applied
+}
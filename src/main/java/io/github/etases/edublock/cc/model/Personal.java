@@ -22,7 +22,9 @@ public class Personal {
     @Property
     boolean male;
     @Property
-    String avatar;
+    String avatar; // only in the input and in the profile, the stored personal refers to it by its hash
+    @Property
+    String avatarHash; // the hexadecimal SHA-256 of the avatar, null if there is no avatar
     @Property
     Date birthDate;
     @Property
@@ -43,4 +45,6 @@ public class Personal {
     String guardianJob;
     @Property
     String homeTown;
+    @Property
+    long version; // increased on every write
 }
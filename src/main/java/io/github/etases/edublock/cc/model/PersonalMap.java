@@ -5,6 +5,8 @@ import lombok.experimental.FieldDefaults;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Getter
@@ -17,4 +19,10 @@ import java.util.Map;
 public class PersonalMap {
     @Property
     Map<Long, Personal> personals;
+    @Property
+    List<Long> missingIds; // requested ids that have no personal
+
+    public PersonalMap(Map<Long, Personal> personals) {
+        this(personals, new ArrayList<>());
+    }
 }
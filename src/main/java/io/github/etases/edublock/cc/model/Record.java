@@ -5,8 +5,10 @@ import lombok.experimental.FieldDefaults;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Getter
 @Setter
@@ -18,17 +20,26 @@ import java.util.Map;
 public class Record {
     @Property
     Map<Long, ClassRecord> classRecords; // key : record id (class id)
+    @Property
+    long version; // increased on every write
+    @Property
+    List<Integer> archivedYears; // the sealed years whose class records are stored in their own compressed entries, null if none
+
+    public Record(Map<Long, ClassRecord> classRecords, long version) {
+        this(classRecords, version, null);
+    }
 
     public static Record clone(Record record) {
         if (record == null) {
-            return new Record(new HashMap<>());
+            return new Record(new TreeMap<>(), 0);
         }
-        var cloneClassRecords = new HashMap<Long, ClassRecord>();
+        var cloneClassRecords = new TreeMap<Long, ClassRecord>(); // sorted so that the serialized form is canonical
         if (record.getClassRecords() != null) {
             for (var entry : record.getClassRecords().entrySet()) {
                 cloneClassRecords.put(entry.getKey(), ClassRecord.clone(entry.getValue()));
             }
         }
-        return new Record(cloneClassRecords);
+        var cloneArchivedYears = record.getArchivedYears() == null ? null : new ArrayList<>(record.getArchivedYears());
+        return new Record(cloneClassRecords, record.getVersion(), cloneArchivedYears);
     }
 }
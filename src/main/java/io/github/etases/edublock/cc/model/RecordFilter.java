@@ -0,0 +1,24 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class RecordFilter {
+    @Property
+    Integer year; // null to match any
+    @Property
+    Integer grade; // null to match any
+    @Property
+    String finalClassify; // null to match any
+    @Property
+    Float minAverageFinalScore; // null to match any
+}
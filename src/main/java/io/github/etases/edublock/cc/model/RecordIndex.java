@@ -0,0 +1,50 @@
+package io.github.etases.edublock.cc.model;
+
+import io.github.etases.edublock.cc.util.ScoreUtil;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class RecordIndex {
+    public static final String DOC_TYPE = "recordIndex";
+
+    @Property
+    String docType;
+    @Property
+    String mspId;
+    @Property
+    String clientId;
+    @Property
+    long studentId;
+    @Property
+    long classId;
+    @Property
+    int year;
+    @Property
+    int grade;
+    @Property
+    String finalClassify;
+    @Property
+    float averageFinalScore;
+
+    public static RecordIndex of(String mspId, String clientId, long studentId, long classId, ClassRecord classRecord) {
+        float averageFinalScore = 0;
+        if (classRecord.getSubjects() != null && !classRecord.getSubjects().isEmpty()) {
+            long total = 0;
+            for (Subject subject : classRecord.getSubjects().values()) {
+                total += subject.getFinalScore();
+            }
+            averageFinalScore = ScoreUtil.average(total, classRecord.getSubjects().size());
+        }
+        String finalClassify = classRecord.getClassification() == null ? null : classRecord.getClassification().getFinalClassify();
+        return new RecordIndex(DOC_TYPE, mspId, clientId, studentId, classId, classRecord.getYear(), classRecord.getGrade(), finalClassify, averageFinalScore);
+    }
+}
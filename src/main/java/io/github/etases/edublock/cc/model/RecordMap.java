@@ -5,6 +5,8 @@ import lombok.experimental.FieldDefaults;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Getter
@@ -17,4 +19,10 @@ import java.util.Map;
 public class RecordMap {
     @Property
     Map<Long, Record> records;
+    @Property
+    List<Long> missingIds; // requested ids that have no record
+
+    public RecordMap(Map<Long, Record> records) {
+        this(records, new ArrayList<>());
+    }
 }
@@ -0,0 +1,28 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * The form of a {@link Record} in the state, not exchanged by the contract
+ */
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class StoredRecord extends Record {
+    boolean labelsEncoded; // the subject names and classification labels are codes of the label dictionary
+
+    public StoredRecord(Record record, boolean labelsEncoded) {
+        super(record.getClassRecords(), record.getVersion(), record.getArchivedYears());
+        this.labelsEncoded = labelsEncoded;
+    }
+
+    /**
+     * Get the record without its storage properties, sharing its class records
+     */
+    public Record toRecord() {
+        return new Record(getClassRecords(), getVersion(), getArchivedYears());
+    }
+}
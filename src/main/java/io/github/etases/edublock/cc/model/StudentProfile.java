@@ -0,0 +1,24 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.List;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class StudentProfile {
+    @Property
+    Personal personal; // null if the student has no personal
+    @Property
+    Record record; // null if the student has no record
+    @Property
+    List<RecordHistory> histories; // null if not requested
+}
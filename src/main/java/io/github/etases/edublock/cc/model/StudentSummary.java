@@ -0,0 +1,81 @@
+package io.github.etases.edublock.cc.model;
+
+import io.github.etases.edublock.cc.util.ScoreUtil;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class StudentSummary {
+    @Property
+    Map<Integer, YearSummary> years; // key : year
+    @Property
+    String latestFinalClassify; // the final classification of the latest year, null if there is none
+    @Property
+    long version; // the version of the summarized record
+
+    /**
+     * Summarize the class records by year
+     *
+     * @param classRecords the class records
+     * @return the summary of each year
+     */
+    public static Map<Integer, YearSummary> summarizeYears(Collection<ClassRecord> classRecords) {
+        Map<Integer, Long> totals = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        Map<Integer, ClassRecord> highestGrades = new HashMap<>();
+        for (ClassRecord classRecord : classRecords) {
+            if (classRecord == null) {
+                continue;
+            }
+            int year = classRecord.getYear();
+            long total = totals.getOrDefault(year, 0L);
+            int count = counts.getOrDefault(year, 0);
+            if (classRecord.getSubjects() != null) {
+                for (Subject subject : classRecord.getSubjects().values()) {
+                    total += subject.getFinalScore();
+                    count++;
+                }
+            }
+            totals.put(year, total);
+            counts.put(year, count);
+            ClassRecord highestGrade = highestGrades.get(year);
+            if (highestGrade == null || classRecord.getGrade() > highestGrade.getGrade()) {
+                highestGrades.put(year, classRecord);
+            }
+        }
+        Map<Integer, YearSummary> years = new TreeMap<>();
+        for (Map.Entry<Integer, ClassRecord> entry : highestGrades.entrySet()) {
+            int count = counts.get(entry.getKey());
+            float averageFinalScore = count == 0 ? 0 : ScoreUtil.average(totals.get(entry.getKey()), count);
+            Classification classification = entry.getValue().getClassification();
+            years.put(entry.getKey(), new YearSummary(averageFinalScore, classification == null ? null : classification.getFinalClassify()));
+        }
+        return years;
+    }
+
+    /**
+     * Create the summary of the years
+     *
+     * @param years   the summary of each year
+     * @param version the version of the summarized record
+     * @return the summary
+     */
+    public static StudentSummary of(Map<Integer, YearSummary> years, long version) {
+        TreeMap<Integer, YearSummary> sortedYears = new TreeMap<>(years);
+        String latestFinalClassify = sortedYears.isEmpty() ? null : sortedYears.lastEntry().getValue().getFinalClassify();
+        return new StudentSummary(sortedYears, latestFinalClassify, version);
+    }
+}
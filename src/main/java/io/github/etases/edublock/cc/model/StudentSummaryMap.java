@@ -0,0 +1,28 @@
+package io.github.etases.edublock.cc.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@DataType
+public class StudentSummaryMap {
+    @Property
+    Map<Long, StudentSummary> summaries;
+    @Property
+    List<Long> missingIds; // requested ids that have no record
+
+    public StudentSummaryMap(Map<Long, StudentSummary> summaries) {
+        this(summaries, new ArrayList<>());
+    }
+}
@@ -16,11 +16,11 @@ public class Subject {
     @Property
     String name;
     @Property
-    float firstHalfScore;
+    int firstHalfScore; // in hundredths, a decimal number in JSON
     @Property
-    float secondHalfScore;
+    int secondHalfScore; // in hundredths, a decimal number in JSON
     @Property
-    float finalScore;
+    int finalScore; // in hundredths, a decimal number in JSON
 
     public static Subject clone(Subject subject) {
         return subject == null ? new Subject() : new Subject(subject.getName(), subject.getFirstHalfScore(), subject.getSecondHalfScore(), subject.getFinalScore());
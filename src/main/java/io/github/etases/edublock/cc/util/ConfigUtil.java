@@ -0,0 +1,52 @@
+package io.github.etases.edublock.cc.util;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class ConfigUtil {
+    /**
+     * Get a configuration value from the system properties, then the environment variables
+     *
+     * @param name         the name of the property or variable
+     * @param defaultValue the value if it is not set
+     * @return the value
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            value = System.getenv(name);
+        }
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * Get an integer configuration value from the system properties, then the environment variables
+     *
+     * @param name         the name of the property or variable
+     * @param defaultValue the value if it is not set
+     * @return the value
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * Get a boolean configuration value from the system properties, then the environment variables
+     *
+     * @param name         the name of the property or variable
+     * @param defaultValue the value if it is not set
+     * @return the value
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
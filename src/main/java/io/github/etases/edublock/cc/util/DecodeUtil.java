@@ -0,0 +1,70 @@
+package io.github.etases.edublock.cc.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+@UtilityClass
+public class DecodeUtil {
+    /**
+     * The number of threads decoding scan results, 1 to decode on the transaction thread, 0 to use every available processor
+     */
+    public static final String PARALLELISM_PROPERTY = "EDUBLOCK_DECODE_PARALLELISM";
+    /**
+     * Below this many values the hand-off to the pool costs more than it saves
+     */
+    static final int MIN_PARALLEL_SIZE = 64;
+    private static final ForkJoinPool pool = createPool(ConfigUtil.getInt(PARALLELISM_PROPERTY, 1));
+
+    static ForkJoinPool createPool(int parallelism) {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Deserialize the UTF-8 JSON values, in parallel if configured
+     *
+     * @param values the values
+     * @param clazz  the class of the values
+     * @param <T>    the type of the values
+     * @return the deserialized values, in the same order
+     */
+    public static <T> List<T> deserializeAll(List<byte[]> values, Class<T> clazz) {
+        return deserializeAll(values, clazz, pool);
+    }
+
+    static <T> List<T> deserializeAll(List<byte[]> values, Class<T> clazz, ForkJoinPool pool) {
+        if (pool == null || values.size() < MIN_PARALLEL_SIZE) {
+            List<T> result = new ArrayList<>(values.size());
+            for (byte[] value : values) {
+                result.add(deserialize(value, clazz));
+            }
+            return result;
+        }
+        try {
+            // An ordered stream collected to a list keeps the input order whatever the thread scheduling
+            return pool.submit(() -> values.parallelStream()
+                    .map(value -> deserialize(value, clazz))
+                    .collect(Collectors.toList())
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to decode", e.getCause());
+        }
+    }
+
+    private static <T> T deserialize(byte[] value, Class<T> clazz) {
+        return JsonUtil.deserialize(value, clazz);
+    }
+}
@@ -1,22 +1,131 @@
 package io.github.etases.edublock.cc.util;
 
+import com.owlike.genson.Context;
+import com.owlike.genson.Converter;
+import com.owlike.genson.GenericType;
 import com.owlike.genson.Genson;
 import com.owlike.genson.GensonBuilder;
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.ObjectReader;
+import com.owlike.genson.stream.ObjectWriter;
+import com.owlike.genson.stream.ValueType;
+import io.github.etases.edublock.cc.model.Subject;
 import lombok.experimental.UtilityClass;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+
 @UtilityClass
 public class JsonUtil {
     private static final Genson genson = new GensonBuilder()
             .useRuntimeType(true)
             .failOnMissingProperty(true)
             .failOnNullPrimitive(true)
+            .withConverters(new SubjectConverter())
             .create();
 
     public static <T> T deserialize(String jsonString, Class<T> clazz) {
         return genson.deserialize(jsonString, clazz);
     }
 
+    public static <T> T deserialize(byte[] json, Class<T> clazz) {
+        return genson.deserialize(json, clazz);
+    }
+
+    public static <T> T deserialize(InputStream json, Class<T> clazz) {
+        return genson.deserialize(json, clazz);
+    }
+
     public static String serialize(Object obj) {
         return genson.serialize(obj);
     }
+
+    public static byte[] serializeToBytes(Object obj) {
+        return genson.serializeBytes(obj);
+    }
+
+    public static void serialize(Object obj, OutputStream outputStream) {
+        genson.serialize(obj, outputStream);
+    }
+
+    public static <T> T deserialize(ObjectReader reader, Class<T> clazz) {
+        return genson.deserialize(GenericType.of(clazz), reader, new Context(genson));
+    }
+
+    public static ObjectReader createReader(InputStream json) {
+        return genson.createReader(json);
+    }
+
+    /**
+     * Build the converters of the types now instead of in the first transaction using them
+     *
+     * @param types the types
+     */
+    public static void warmUp(Iterable<Class<?>> types) {
+        for (Class<?> type : types) {
+            Object instance;
+            try {
+                instance = type.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                throw new IllegalArgumentException("Cannot create an instance of " + type.getName(), e);
+            }
+            deserialize(serialize(instance), type);
+        }
+    }
+
+    /**
+     * Write the scores of a subject, kept in hundredths, as exact decimal numbers.
+     * Reading rounds to hundredths, so the float scores written before come back to their intended value.
+     * The properties are in the same order as the other models.
+     */
+    private static final class SubjectConverter implements Converter<Subject> {
+        private static int readScore(ObjectReader reader, String name) {
+            ValueType type = reader.getValueType();
+            if (type != ValueType.INTEGER && type != ValueType.DOUBLE) {
+                throw new JsonBindingException(String.format("\"%s\" of Subject should be a number", name));
+            }
+            return ScoreUtil.toHundredths(reader.valueAsDouble());
+        }
+
+        @Override
+        public void serialize(Subject subject, ObjectWriter writer, Context ctx) {
+            writer.beginObject();
+            writer.writeName("finalScore").writeValue(ScoreUtil.toDecimal(subject.getFinalScore()));
+            writer.writeName("firstHalfScore").writeValue(ScoreUtil.toDecimal(subject.getFirstHalfScore()));
+            if (subject.getName() != null) {
+                writer.writeName("name").writeValue(subject.getName());
+            }
+            writer.writeName("secondHalfScore").writeValue(ScoreUtil.toDecimal(subject.getSecondHalfScore()));
+            writer.endObject();
+        }
+
+        @Override
+        public Subject deserialize(ObjectReader reader, Context ctx) {
+            Subject subject = new Subject();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.next();
+                String name = reader.name();
+                switch (name) {
+                    case "name":
+                        subject.setName(reader.getValueType() == ValueType.NULL ? null : reader.valueAsString());
+                        break;
+                    case "firstHalfScore":
+                        subject.setFirstHalfScore(readScore(reader, name));
+                        break;
+                    case "secondHalfScore":
+                        subject.setSecondHalfScore(readScore(reader, name));
+                        break;
+                    case "finalScore":
+                        subject.setFinalScore(readScore(reader, name));
+                        break;
+                    default:
+                        throw new JsonBindingException(String.format("No matching property in Subject for key %s", name));
+                }
+            }
+            reader.endObject();
+            return subject;
+        }
+    }
 }
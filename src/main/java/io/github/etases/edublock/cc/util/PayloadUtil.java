@@ -0,0 +1,121 @@
+package io.github.etases.edublock.cc.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@UtilityClass
+public class PayloadUtil {
+    /**
+     * The encoding of a gzip-compressed payload
+     */
+    public static final String GZIP_ENCODING = "gzip";
+    /**
+     * The encoding of a plain payload
+     */
+    public static final String IDENTITY_ENCODING = "identity";
+    /**
+     * The maximum size in bytes of a payload after reassembly and decompression
+     */
+    public static final String MAX_SIZE_PROPERTY = "EDUBLOCK_MAX_PAYLOAD_SIZE";
+    private static final int MAX_SIZE = ConfigUtil.getInt(MAX_SIZE_PROPERTY, 64 * 1024 * 1024);
+
+    /**
+     * Open the payload split in the chunks, decompressing it if encoded
+     *
+     * @param chunks   the chunks, in order
+     * @param encoding the encoding of the joined chunks, or null for a plain payload
+     * @return the stream of the payload
+     * @throws IOException if the encoding is unknown or the compressed data is invalid
+     */
+    public static InputStream open(List<byte[]> chunks, String encoding) throws IOException {
+        return open(chunks, encoding, MAX_SIZE);
+    }
+
+    static InputStream open(List<byte[]> chunks, String encoding, int maxSize) throws IOException {
+        List<InputStream> streams = new ArrayList<>(chunks.size());
+        for (byte[] chunk : chunks) {
+            streams.add(new ByteArrayInputStream(chunk));
+        }
+        // Chained instead of joined, so the chunks are never copied into one array
+        InputStream joined = streams.size() == 1 ? streams.get(0) : new SequenceInputStream(Collections.enumeration(streams));
+        if (isIdentity(encoding)) {
+            return new LimitedInputStream(joined, maxSize);
+        }
+        if (encoding.equals(GZIP_ENCODING)) {
+            return new LimitedInputStream(new GZIPInputStream(joined), maxSize);
+        }
+        throw new IOException("Unknown encoding: " + encoding);
+    }
+
+    /**
+     * Compress the value with gzip
+     *
+     * @param value the value
+     * @return the compressed value
+     */
+    public static byte[] gzip(byte[] value) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static boolean isIdentity(String encoding) {
+        return encoding == null || encoding.isEmpty() || encoding.equals(IDENTITY_ENCODING);
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.remaining = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                consume(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                consume(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            consume(count);
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void consume(long count) throws IOException {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new IOException("The payload is larger than the limit");
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.etases.edublock.cc.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+@UtilityClass
+public class ScoreUtil {
+    /**
+     * The number of decimal places kept in a score
+     */
+    public static final int SCALE = 2;
+    private static final int CACHED_HUNDREDTHS = 1000;
+    // The usual scores, 0 to 10, so writing them allocates nothing; a BigDecimal caches its own text
+    private static final BigDecimal[] CACHED_DECIMALS = new BigDecimal[CACHED_HUNDREDTHS + 1];
+
+    static {
+        for (int hundredths = 0; hundredths <= CACHED_HUNDREDTHS; hundredths++) {
+            CACHED_DECIMALS[hundredths] = createDecimal(hundredths);
+            CACHED_DECIMALS[hundredths].toString();
+        }
+    }
+
+    /**
+     * Convert a decimal score to hundredths, rounding to the nearest.
+     * Scores written as floats before, like 8.300000190734863, come back to their intended value.
+     *
+     * @param score the decimal score
+     * @return the score in hundredths
+     * @throws ArithmeticException if the score is out of range
+     */
+    public static int toHundredths(double score) {
+        double hundredths = Math.rint(score * 100);
+        if (Double.isNaN(hundredths) || hundredths > Integer.MAX_VALUE || hundredths < Integer.MIN_VALUE) {
+            throw new ArithmeticException("Score out of range: " + score);
+        }
+        return (int) hundredths;
+    }
+
+    /**
+     * Convert a score in hundredths to its exact decimal value
+     *
+     * @param hundredths the score in hundredths
+     * @return the decimal score, without trailing zeros
+     */
+    public static BigDecimal toDecimal(long hundredths) {
+        if (hundredths >= 0 && hundredths <= CACHED_HUNDREDTHS) {
+            return CACHED_DECIMALS[(int) hundredths];
+        }
+        return createDecimal(hundredths);
+    }
+
+    /**
+     * Get the average of the scores
+     *
+     * @param totalHundredths the sum of the scores in hundredths
+     * @param count           the number of scores
+     * @return the average, computed from the exact sum
+     */
+    public static float average(long totalHundredths, int count) {
+        return (float) (totalHundredths / (count * 100.0));
+    }
+
+    private static BigDecimal createDecimal(long hundredths) {
+        BigDecimal score = BigDecimal.valueOf(hundredths, SCALE);
+        return hundredths % 100 == 0 ? score.setScale(0, RoundingMode.UNNECESSARY) : score.stripTrailingZeros();
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.etases.edublock.cc.util;
+
+import io.github.etases.edublock.cc.model.RecordFilter;
+import io.github.etases.edublock.cc.model.RecordIndex;
+import lombok.experimental.UtilityClass;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@UtilityClass
+public class SelectorUtil {
+    /**
+     * Build the CouchDB query for the {@link RecordIndex} documents of the client matching the filter
+     *
+     * @param mspId    the MSP id of the client
+     * @param clientId the id of the client
+     * @param filter   the filter
+     * @return the query as a JSON string
+     */
+    public static String buildRecordIndexQuery(String mspId, String clientId, RecordFilter filter) {
+        Map<String, Object> selector = new LinkedHashMap<>();
+        selector.put("docType", RecordIndex.DOC_TYPE);
+        selector.put("mspId", mspId);
+        selector.put("clientId", clientId);
+        if (filter.getYear() != null) {
+            selector.put("year", filter.getYear());
+        }
+        if (filter.getGrade() != null) {
+            selector.put("grade", filter.getGrade());
+        }
+        if (filter.getFinalClassify() != null) {
+            selector.put("finalClassify", filter.getFinalClassify());
+        }
+        if (filter.getMinAverageFinalScore() != null) {
+            selector.put("averageFinalScore", Collections.singletonMap("$gte", filter.getMinAverageFinalScore()));
+        }
+        return JsonUtil.serialize(Collections.singletonMap("selector", selector));
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.etases.edublock.cc.util;
+
+import lombok.experimental.UtilityClass;
+
+@UtilityClass
+public class ShardUtil {
+    /**
+     * The maximum number of shards the keys can be split into
+     */
+    public static final int MAX_SHARD_COUNT = 1000;
+    private static final int BOUNDARY_DIGITS = 9;
+    private static final long BOUNDARY_SCALE = 1_000_000_000L;
+
+    /**
+     * Get the first id of a shard in the lexical order of the ids, which is the order of their composite keys.
+     * The ids are split by their leading digits, read as a fraction, so the shards are even when the ids are spread evenly over their leading digits.
+     *
+     * @param shardIndex the shard index, from 0 to the shard count, which gives the end of the last shard
+     * @param shardCount the number of shards
+     * @return the digits the shard starts at, empty for the first shard, or null for the end of the last shard
+     * @throws IllegalArgumentException if the shard is out of range
+     */
+    public static String getBoundary(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardCount > MAX_SHARD_COUNT || shardIndex < 0 || shardIndex > shardCount) {
+            throw new IllegalArgumentException(String.format("Invalid shard %d of %d", shardIndex, shardCount));
+        }
+        if (shardIndex == shardCount) {
+            return null;
+        }
+        if (shardIndex == 0) {
+            return "";
+        }
+        long fraction = shardIndex * BOUNDARY_SCALE / shardCount;
+        StringBuilder digits = new StringBuilder(Long.toString(fraction));
+        while (digits.length() < BOUNDARY_DIGITS) {
+            digits.insert(0, '0');
+        }
+        int length = digits.length();
+        while (digits.charAt(length - 1) == '0') {
+            length--;
+        }
+        return digits.substring(0, length);
+    }
+
+    /**
+     * Check if the id is in the shard
+     *
+     * @param id         the id as in its key
+     * @param shardIndex the shard index
+     * @param shardCount the number of shards
+     * @return true if the id is between the boundaries of the shard
+     */
+    public static boolean contains(String id, int shardIndex, int shardCount) {
+        String end = getBoundary(shardIndex + 1, shardCount);
+        return id.compareTo(getBoundary(shardIndex, shardCount)) >= 0 && (end == null || id.compareTo(end) < 0);
+    }
+}
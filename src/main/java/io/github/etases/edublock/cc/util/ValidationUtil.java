@@ -0,0 +1,368 @@
+package io.github.etases.edublock.cc.util;
+
+import com.owlike.genson.stream.JsonType;
+import com.owlike.genson.stream.ObjectReader;
+import com.owlike.genson.stream.ValueType;
+import io.github.etases.edublock.cc.model.ClassRecord;
+import io.github.etases.edublock.cc.model.Personal;
+import io.github.etases.edublock.cc.model.Record;
+import io.github.etases.edublock.cc.model.RecordMap;
+import lombok.experimental.UtilityClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+@UtilityClass
+public class ValidationUtil {
+    /**
+     * The maximum number of class records in a record
+     */
+    public static final String MAX_CLASS_RECORDS_PROPERTY = "EDUBLOCK_MAX_CLASS_RECORDS";
+    /**
+     * The maximum number of subjects in a class record
+     */
+    public static final String MAX_SUBJECTS_PROPERTY = "EDUBLOCK_MAX_SUBJECTS";
+    /**
+     * The maximum number of records in a batch
+     */
+    public static final String MAX_RECORDS_PROPERTY = "EDUBLOCK_MAX_RECORDS";
+    /**
+     * The maximum length of the text fields of a personal and of a class name
+     */
+    public static final String MAX_TEXT_LENGTH_PROPERTY = "EDUBLOCK_MAX_TEXT_LENGTH";
+    /**
+     * The maximum length of the avatar of a personal
+     */
+    public static final String MAX_AVATAR_LENGTH_PROPERTY = "EDUBLOCK_MAX_AVATAR_LENGTH";
+    private static final int MAX_EXCERPT_LENGTH = 128;
+    private static final Limits LIMITS = new Limits(
+            ConfigUtil.getInt(MAX_RECORDS_PROPERTY, 1000),
+            ConfigUtil.getInt(MAX_CLASS_RECORDS_PROPERTY, 100),
+            ConfigUtil.getInt(MAX_SUBJECTS_PROPERTY, 50),
+            ConfigUtil.getInt(MAX_TEXT_LENGTH_PROPERTY, 1000),
+            ConfigUtil.getInt(MAX_AVATAR_LENGTH_PROPERTY, 1024 * 1024)
+    );
+
+    /**
+     * Deserialize the input in a single pass, checking its shape against the limits as it is read,
+     * so over-limit input is rejected before the rest of the object is built
+     *
+     * @param json  the input
+     * @param clazz the class of the value
+     * @param <T>   the type of the value
+     * @return the value
+     * @throws IllegalArgumentException if the input is over a limit
+     */
+    public static <T> T deserialize(InputStream json, Class<T> clazz) {
+        return deserialize(json, clazz, LIMITS);
+    }
+
+    static <T> T deserialize(InputStream json, Class<T> clazz, Limits limits) {
+        try (ObjectReader reader = new LimitedObjectReader(JsonUtil.createReader(json), getKind(clazz), limits)) {
+            return JsonUtil.deserialize(reader, clazz);
+        } catch (RuntimeException e) {
+            // The converters wrap what the reader throws, so the limit is found in the causes
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof LimitExceededException) {
+                    throw (LimitExceededException) cause;
+                }
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Get the start of the input for logging
+     *
+     * @param json the input
+     * @return the first characters of the input, with the size of the rest
+     * @throws IOException if the input cannot be read
+     */
+    public static String excerpt(InputStream json) throws IOException {
+        byte[] start = new byte[MAX_EXCERPT_LENGTH];
+        int length = 0;
+        int count;
+        while (length < start.length && (count = json.read(start, length, start.length - length)) != -1) {
+            length += count;
+        }
+        long rest = 0;
+        byte[] buffer = new byte[8192];
+        while ((count = json.read(buffer)) != -1) {
+            rest += count;
+        }
+        String excerpt = new String(start, 0, length, StandardCharsets.UTF_8);
+        return rest == 0 ? excerpt : excerpt + "... (" + (length + rest) + " bytes)";
+    }
+
+    private static Kind getKind(Class<?> clazz) {
+        if (clazz == Record.class) {
+            return Kind.RECORD;
+        } else if (clazz == ClassRecord.class) {
+            return Kind.CLASS_RECORD;
+        } else if (clazz == RecordMap.class) {
+            return Kind.RECORD_MAP;
+        } else if (clazz == Personal.class) {
+            return Kind.PERSONAL;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * The limits of the input, read once from the configuration
+     */
+    static final class Limits {
+        private final int maxRecords;
+        private final int maxClassRecords;
+        private final int maxSubjects;
+        private final int maxTextLength;
+        private final int maxAvatarLength;
+
+        Limits(int maxRecords, int maxClassRecords, int maxSubjects, int maxTextLength, int maxAvatarLength) {
+            this.maxRecords = maxRecords;
+            this.maxClassRecords = maxClassRecords;
+            this.maxSubjects = maxSubjects;
+            this.maxTextLength = maxTextLength;
+            this.maxAvatarLength = maxAvatarLength;
+        }
+    }
+
+    private enum Kind {
+        RECORD_MAP, RECORDS, RECORD, CLASS_RECORDS, CLASS_RECORD, SUBJECTS, PERSONAL, OTHER
+    }
+
+    private static final class LimitExceededException extends IllegalArgumentException {
+        private LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Frame {
+        private final Kind kind;
+        private final boolean object;
+        private int count;
+        private String name;
+
+        private Frame(Kind kind, boolean object) {
+            this.kind = kind;
+            this.object = object;
+        }
+    }
+
+    /**
+     * Passes the reads of the converters through, counting the entries of the limited maps and checking the lengths of the limited texts
+     */
+    private static final class LimitedObjectReader implements ObjectReader {
+        private final ObjectReader reader;
+        private final Kind rootKind;
+        private final Limits limits;
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        // The object was entered to read its metadata, so its beginObject does not enter it again
+        private boolean metadataRead;
+
+        private LimitedObjectReader(ObjectReader reader, Kind rootKind, Limits limits) {
+            this.reader = reader;
+            this.rootKind = rootKind;
+            this.limits = limits;
+        }
+
+        private Kind getChildKind() {
+            Frame frame = frames.peek();
+            if (frame == null) {
+                return rootKind;
+            }
+            switch (frame.kind) {
+                case RECORD_MAP:
+                    return "records".equals(frame.name) ? Kind.RECORDS : Kind.OTHER;
+                case RECORDS:
+                    return Kind.RECORD;
+                case RECORD:
+                    return "classRecords".equals(frame.name) ? Kind.CLASS_RECORDS : Kind.OTHER;
+                case CLASS_RECORDS:
+                    return Kind.CLASS_RECORD;
+                case CLASS_RECORD:
+                    return "subjects".equals(frame.name) ? Kind.SUBJECTS : Kind.OTHER;
+                default:
+                    return Kind.OTHER;
+            }
+        }
+
+        private static void checkCount(int count, int maxCount, String name) {
+            if (count > maxCount) {
+                throw new LimitExceededException(String.format("More than %d %s", maxCount, name));
+            }
+        }
+
+        private void checkLength(String value) {
+            Frame frame = frames.peek();
+            if (frame == null || value == null) {
+                return;
+            }
+            int maxLength;
+            if (frame.kind == Kind.PERSONAL) {
+                maxLength = "avatar".equals(frame.name) ? limits.maxAvatarLength : limits.maxTextLength;
+            } else if (frame.kind == Kind.CLASS_RECORD && "className".equals(frame.name)) {
+                maxLength = limits.maxTextLength;
+            } else {
+                return;
+            }
+            if (value.length() > maxLength) {
+                throw new LimitExceededException(String.format("\"%s\" is longer than %d characters", frame.name, maxLength));
+            }
+        }
+
+        @Override
+        public ObjectReader beginObject() {
+            if (metadataRead) {
+                metadataRead = false;
+            } else {
+                frames.push(new Frame(getChildKind(), true));
+            }
+            reader.beginObject();
+            return this;
+        }
+
+        @Override
+        public ObjectReader endObject() {
+            reader.endObject();
+            frames.pop();
+            return this;
+        }
+
+        @Override
+        public ObjectReader beginArray() {
+            reader.beginArray();
+            frames.push(new Frame(Kind.OTHER, false));
+            return this;
+        }
+
+        @Override
+        public ObjectReader endArray() {
+            reader.endArray();
+            frames.pop();
+            return this;
+        }
+
+        @Override
+        public ObjectReader nextObjectMetadata() {
+            frames.push(new Frame(getChildKind(), true));
+            metadataRead = true;
+            reader.nextObjectMetadata();
+            return this;
+        }
+
+        @Override
+        public ValueType next() {
+            ValueType type = reader.next();
+            Frame frame = frames.peek();
+            if (frame != null) {
+                if (frame.object) {
+                    frame.name = reader.name();
+                }
+                frame.count++;
+                if (frame.kind == Kind.RECORDS) {
+                    checkCount(frame.count, limits.maxRecords, "records");
+                } else if (frame.kind == Kind.CLASS_RECORDS) {
+                    checkCount(frame.count, limits.maxClassRecords, "class records");
+                } else if (frame.kind == Kind.SUBJECTS) {
+                    checkCount(frame.count, limits.maxSubjects, "subjects");
+                }
+            }
+            return type;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return reader.hasNext();
+        }
+
+        @Override
+        public ObjectReader skipValue() {
+            reader.skipValue();
+            return this;
+        }
+
+        @Override
+        public ValueType getValueType() {
+            return reader.getValueType();
+        }
+
+        @Override
+        public String metadata(String name) {
+            return reader.metadata(name);
+        }
+
+        @Override
+        public String name() {
+            return reader.name();
+        }
+
+        @Override
+        public String valueAsString() {
+            String value = reader.valueAsString();
+            if (reader.getValueType() == ValueType.STRING) {
+                checkLength(value);
+            }
+            return value;
+        }
+
+        @Override
+        public int valueAsInt() {
+            return reader.valueAsInt();
+        }
+
+        @Override
+        public long valueAsLong() {
+            return reader.valueAsLong();
+        }
+
+        @Override
+        public double valueAsDouble() {
+            return reader.valueAsDouble();
+        }
+
+        @Override
+        public short valueAsShort() {
+            return reader.valueAsShort();
+        }
+
+        @Override
+        public float valueAsFloat() {
+            return reader.valueAsFloat();
+        }
+
+        @Override
+        public boolean valueAsBoolean() {
+            return reader.valueAsBoolean();
+        }
+
+        @Override
+        public byte[] valueAsByteArray() {
+            return reader.valueAsByteArray();
+        }
+
+        @Override
+        public JsonType enclosingType() {
+            return reader.enclosingType();
+        }
+
+        @Override
+        public int column() {
+            return reader.column();
+        }
+
+        @Override
+        public int row() {
+            return reader.row();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
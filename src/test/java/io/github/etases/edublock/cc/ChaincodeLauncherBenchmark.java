@@ -0,0 +1,65 @@
+package io.github.etases.edublock.cc;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@Tag("benchmark")
+class ChaincodeLauncherBenchmark {
+    private static final String CLASSPATH_PROPERTY = "edublock.benchmark.classpath";
+    private static final int ROUNDS = 5;
+    private static final String JAVA = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    private static final File NULL_FILE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+
+    private static long run(String classpath, String... options) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(JAVA);
+        command.addAll(Arrays.asList(options));
+        command.add("-cp");
+        command.add(classpath);
+        command.add(ChaincodeLauncher.class.getName());
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(NULL_FILE);
+        builder.environment().put(ChaincodeLauncher.TRAINING_RUN, "true");
+        long start = System.nanoTime();
+        int exitCode = builder.start().waitFor();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(0, exitCode, () -> "Failed: " + command);
+        return elapsed;
+    }
+
+    private static long time(String classpath, String... options) throws IOException, InterruptedException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(classpath, options));
+        }
+        return best;
+    }
+
+    @Test
+    void startupWithClassDataSharing(@TempDir Path directory) throws IOException, InterruptedException {
+        // Class-data-sharing only archives classes from jars, so this runs against the shadow jar
+        String classpath = System.getProperty(CLASSPATH_PROPERTY);
+        assumeTrue(classpath != null && !classpath.isEmpty(), CLASSPATH_PROPERTY + " is not set");
+        Path classList = directory.resolve("chaincode.classlist");
+        Path archive = directory.resolve("chaincode.jsa");
+        run(classpath, "-XX:DumpLoadedClassList=" + classList);
+        run(classpath, "-Xshare:dump", "-XX:SharedClassListFile=" + classList, "-XX:SharedArchiveFile=" + archive);
+        assertTrue(archive.toFile().isFile());
+
+        long withoutArchive = time(classpath);
+        long withArchive = time(classpath, "-Xshare:on", "-XX:SharedArchiveFile=" + archive);
+        System.out.printf("Startup to ready: %d ms without the archive, %d ms with the archive, speedup %.2fx%n",
+                withoutArchive / 1_000_000, withArchive / 1_000_000, (double) withoutArchive / withArchive);
+    }
+}
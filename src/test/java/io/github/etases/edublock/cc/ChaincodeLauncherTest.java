@@ -0,0 +1,153 @@
+package io.github.etases.edublock.cc;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.protos.peer.ChaincodeGrpc;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.Chaincode.ChaincodeID;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChaincodeLauncherTest {
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(ChaincodeLauncher.TX_CORE_THREADS);
+        System.clearProperty(ChaincodeLauncher.TX_MAX_THREADS);
+        System.clearProperty(ChaincodeLauncher.TX_QUEUE_SIZE);
+        System.clearProperty(ChaincodeLauncher.MAX_INBOUND_MESSAGE_SIZE);
+        System.clearProperty(ChaincodeLauncher.KEEP_ALIVE_TIME_MINUTES);
+    }
+
+    @Test
+    void modelTypesCoverModelPackage() throws IOException {
+        Path modelDirectory = Paths.get("src/main/java/io/github/etases/edublock/cc/model");
+        List<String> modelClasses;
+        try (Stream<Path> files = Files.list(modelDirectory)) {
+            modelClasses = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".java"))
+                    .map(name -> "io.github.etases.edublock.cc.model." + name.substring(0, name.length() - ".java".length()))
+                    .collect(Collectors.toList());
+        }
+
+        List<String> modelTypes = ChaincodeLauncher.MODEL_TYPES.stream().map(Class::getName).sorted().collect(Collectors.toList());
+        Collections.sort(modelClasses);
+        assertEquals(modelClasses, modelTypes);
+    }
+
+    @Test
+    void trainingRun() {
+        assertDoesNotThrow(() -> ChaincodeLauncher.train(new String[0]));
+    }
+
+    @Test
+    void configureExecutor() {
+        System.setProperty(ChaincodeLauncher.TX_CORE_THREADS, "8");
+        System.setProperty(ChaincodeLauncher.TX_MAX_THREADS, "16");
+        System.setProperty(ChaincodeLauncher.TX_QUEUE_SIZE, "100");
+        Properties config = new Properties();
+        config.setProperty("TP_KEEP_ALIVE_MS", "1000");
+
+        ChaincodeLauncher.configureExecutor(config);
+
+        assertEquals("8", config.getProperty("TP_CORE_POOL_SIZE"));
+        assertEquals("16", config.getProperty("TP_MAX_POOL_SIZE"));
+        assertEquals("100", config.getProperty("TP_QUEUE_SIZE"));
+        assertEquals("1000", config.getProperty("TP_KEEP_ALIVE_MS"));
+    }
+
+    @Test
+    void configureExecutorInvalid() {
+        System.setProperty(ChaincodeLauncher.TX_CORE_THREADS, "8");
+
+        assertThrows(IllegalArgumentException.class, () -> ChaincodeLauncher.configureExecutor(new Properties()));
+    }
+
+    @Test
+    void createServerProperties() {
+        System.setProperty(ChaincodeLauncher.MAX_INBOUND_MESSAGE_SIZE, "1048576");
+        System.setProperty(ChaincodeLauncher.KEEP_ALIVE_TIME_MINUTES, "3");
+
+        ChaincodeServerProperties properties = ChaincodeLauncher.createServerProperties("127.0.0.1:9999");
+
+        assertEquals(new InetSocketAddress("127.0.0.1", 9999), properties.getServerAddress());
+        assertEquals(1048576, properties.getMaxInboundMessageSize());
+        assertEquals(3, properties.getKeepAliveTimeMinutes());
+        assertEquals(new ChaincodeServerProperties().getMaxInboundMetadataSize(), properties.getMaxInboundMetadataSize());
+    }
+
+    @Test
+    void createServerPropertiesInvalidAddress() {
+        assertThrows(IllegalArgumentException.class, () -> ChaincodeLauncher.createServerProperties("localhost"));
+    }
+
+    @Test
+    void serverRegistersWithConnectingPeer() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ContractRouter router = ChaincodeLauncher.createRouter(new String[]{"-i", "edublock:smoke"});
+        ChaincodeServer server = ChaincodeLauncher.createServer(router, "127.0.0.1:" + port);
+        Thread serverThread = new Thread(() -> {
+            try {
+                router.startRouterWithChaincodeServer(server);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        ManagedChannel channel = NettyChannelBuilder.forAddress("127.0.0.1", port).usePlaintext().build();
+        try {
+            BlockingQueue<ChaincodeMessage> received = new LinkedBlockingQueue<>();
+            StreamObserver<ChaincodeMessage> peer = ChaincodeGrpc.newStub(channel)
+                    .withWaitForReady()
+                    .connect(new StreamObserver<ChaincodeMessage>() {
+                        @Override
+                        public void onNext(ChaincodeMessage message) {
+                            received.add(message);
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                        }
+                    });
+
+            ChaincodeMessage message = received.poll(30, TimeUnit.SECONDS);
+
+            assertNotNull(message);
+            assertEquals(ChaincodeMessage.Type.REGISTER, message.getType());
+            assertEquals("edublock:smoke", ChaincodeID.parseFrom(message.getPayload()).getName());
+            peer.onCompleted();
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.model.Record;
+import io.github.etases.edublock.cc.util.JsonUtil;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the bytes allocated by each transaction on a record of standard size against the budgets in allocation-budgets.properties.
+ * A budget is the measured allocation with some headroom; re-measure and update it when a change is expected to allocate more.
+ * Each call runs as a transaction on an {@link EduBlockContext}, including the flush of its state buffer.
+ * Only the allocations of the calling thread are counted.
+ * The budgets hold for the JDK they were measured on, so the tests run in the allocationTest task, not with the other tests.
+ */
+@Tag("allocation")
+class EduBlockChainCodeAllocationTest {
+    private static final int STUDENT_COUNT = 20;
+    private static final int CLASS_COUNT = 3;
+    private static final int SUBJECT_COUNT = 13;
+    private static final int WARM_UP_ROUNDS = 300;
+    private static final int MEASURED_ROUNDS = 20;
+    private static final String MSP_ID = "TestOrg";
+    private static final String CLIENT_ID = "TestClient";
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static Properties budgets;
+
+    private final EduBlockChainCode contract = new EduBlockChainCode();
+    private final Map<String, byte[]> transientMap = new HashMap<>();
+    private final ChaincodeStub stub = InMemoryStubs.createStub(transientMap);
+    private final InMemoryLedger ledger = new InMemoryLedger();
+    private TransactionRunner transactions;
+
+    @BeforeAll
+    static void loadBudgets() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean, "The allocated bytes are not measurable");
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "The allocated bytes are not measurable");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        budgets = new Properties();
+        try (InputStream inputStream = EduBlockChainCodeAllocationTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(Objects.requireNonNull(inputStream, "allocation-budgets.properties is missing"));
+        }
+    }
+
+    private static Record createRecord(long studentId) {
+        Record record = new Record(new TreeMap<>(), 1);
+        for (long classId = 0; classId < CLASS_COUNT; classId++) {
+            ClassRecord classRecord = new ClassRecord(2020 + (int) classId, 10 + (int) classId, "1" + classId + "A" + studentId % 4, new TreeMap<>(), new Classification("Good", "Good", "Excellent"));
+            for (long subjectId = 0; subjectId < SUBJECT_COUNT; subjectId++) {
+                classRecord.getSubjects().put(subjectId, new Subject("Subject " + subjectId, 750, 825, 800));
+            }
+            record.getClassRecords().put(classId, classRecord);
+        }
+        return record;
+    }
+
+    private static Personal createPersonal() {
+        Personal personal = new Personal();
+        personal.setFirstName("Nguyễn Văn");
+        personal.setLastName("An");
+        personal.setMale(true);
+        personal.setBirthDate(new Date(1_000_000_000_000L));
+        personal.setAddress("1 Võ Văn Ngân, Thủ Đức, Thành phố Hồ Chí Minh");
+        personal.setEthnic("Kinh");
+        personal.setFatherName("Nguyễn Văn Bình");
+        personal.setFatherJob("Kỹ sư");
+        personal.setMotherName("Trần Thị Cúc");
+        personal.setMotherJob("Giáo viên");
+        personal.setHomeTown("Bình Dương");
+        personal.setVersion(1);
+        return personal;
+    }
+
+    @BeforeEach
+    void setUp() {
+        transactions = new TransactionRunner(contract, stub, InMemoryStubs.createClient(MSP_ID, CLIENT_ID));
+        when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+        when(stub.getTxId()).thenReturn("tx1");
+        ledger.attach(stub);
+        for (long studentId = 0; studentId < STUDENT_COUNT; studentId++) {
+            ledger.state.put(new CompositeKey("record", MSP_ID, CLIENT_ID, Long.toString(studentId)).toString(), JsonUtil.serializeToBytes(createRecord(studentId)));
+            ledger.collection("_implicit_org_" + MSP_ID).put(new CompositeKey("personal", MSP_ID, CLIENT_ID, Long.toString(studentId)).toString(), JsonUtil.serializeToBytes(createPersonal()));
+        }
+    }
+
+    private static long measure(Runnable call) {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            call.run();
+            allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return allocated;
+    }
+
+    private void assertWithinBudget(String transaction, Runnable call) {
+        long allocated = measure(call);
+        String budget = budgets.getProperty(transaction);
+        if (budget == null) {
+            fail(String.format("No allocation budget for %s, measured %d bytes", transaction, allocated));
+        }
+        long budgetBytes = Long.parseLong(budget.trim());
+        assertTrue(allocated <= budgetBytes, () -> String.format("%s allocated %d bytes, over its budget of %d bytes", transaction, allocated, budgetBytes));
+    }
+
+    @Test
+    void getStudentPersonal() {
+        assertWithinBudget("getStudentPersonal", () -> transactions.run(ctx -> contract.getStudentPersonal(ctx, 1)));
+    }
+
+    @Test
+    void updateStudentPersonal() {
+        Personal personal = createPersonal();
+        byte[][] values = {JsonUtil.serializeToBytes(personal), null};
+        personal.setAddress("2 Võ Văn Ngân, Thủ Đức, Thành phố Hồ Chí Minh");
+        values[1] = JsonUtil.serializeToBytes(personal);
+        int[] round = {0};
+        // Alternates between two personals, so every call writes
+        assertWithinBudget("updateStudentPersonal", () -> {
+            transientMap.put("personal", values[round[0]++ % 2]);
+            transactions.run(ctx -> contract.updateStudentPersonal(ctx, 1));
+        });
+    }
+
+    @Test
+    void getStudentRecord() {
+        assertWithinBudget("getStudentRecord", () -> transactions.run(ctx -> contract.getStudentRecord(ctx, 1)));
+    }
+
+    @Test
+    void getStudentRecords() {
+        assertWithinBudget("getStudentRecords", () -> transactions.run(ctx -> contract.getStudentRecords(ctx, "[1, 2, 3, 4, 5]")));
+    }
+
+    @Test
+    void getAllStudentRecords() {
+        assertWithinBudget("getAllStudentRecords", () -> transactions.run(ctx -> contract.getAllStudentRecords(ctx)));
+    }
+
+    @Test
+    void countStudentRecords() {
+        assertWithinBudget("countStudentRecords", () -> transactions.run(ctx -> contract.countStudentRecords(ctx)));
+    }
+
+    @Test
+    void existsStudentRecords() {
+        assertWithinBudget("existsStudentRecords", () -> transactions.run(ctx -> contract.existsStudentRecords(ctx, "[1, 2, 3, 4, 5]")));
+    }
+
+    @Test
+    void getTopStudents() {
+        assertWithinBudget("getTopStudents", () -> transactions.run(ctx -> contract.getTopStudents(ctx, 5, -1, -1, 0)));
+    }
+
+    @Test
+    void updateStudentRecord() {
+        Record record = createRecord(1);
+        byte[][] values = {JsonUtil.serializeToBytes(record), null};
+        record.getClassRecords().get(2L).getSubjects().get(0L).setFinalScore(900);
+        values[1] = JsonUtil.serializeToBytes(record);
+        int[] round = {0};
+        // Alternates between two records, so every call writes
+        assertWithinBudget("updateStudentRecord", () -> {
+            transientMap.put("record", values[round[0]++ % 2]);
+            transactions.run(ctx -> contract.updateStudentRecord(ctx, 1));
+        });
+    }
+
+    @Test
+    void updateStudentRecordUnchanged() {
+        transientMap.put("record", JsonUtil.serializeToBytes(createRecord(1)));
+        transactions.run(ctx -> contract.updateStudentRecord(ctx, 1));
+        assertWithinBudget("updateStudentRecordUnchanged", () -> transactions.run(ctx -> contract.updateStudentRecord(ctx, 1)));
+    }
+
+    @Test
+    void updateStudentClassRecord() {
+        ClassRecord classRecord = createRecord(1).getClassRecords().get(2L);
+        byte[][] values = {JsonUtil.serializeToBytes(classRecord), null};
+        classRecord.getSubjects().get(0L).setFinalScore(900);
+        values[1] = JsonUtil.serializeToBytes(classRecord);
+        int[] round = {0};
+        // Alternates between two class records, so every call writes
+        assertWithinBudget("updateStudentClassRecord", () -> {
+            transientMap.put("classRecord", values[round[0]++ % 2]);
+            transactions.run(ctx -> contract.updateStudentClassRecord(ctx, 1, 2));
+        });
+    }
+
+    @Test
+    void budgetsAreUsed() {
+        Set<String> transactions = new HashSet<>();
+        for (java.lang.reflect.Method method : getClass().getDeclaredMethods()) {
+            if (method.isAnnotationPresent(Test.class)) {
+                transactions.add(method.getName());
+            }
+        }
+        for (String transaction : budgets.stringPropertyNames()) {
+            assertTrue(transactions.contains(transaction), () -> "The budget of " + transaction + " is not checked by any test");
+        }
+    }
+}
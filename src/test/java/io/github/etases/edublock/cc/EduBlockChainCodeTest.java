@@ -1,23 +1,32 @@
 package io.github.etases.edublock.cc;
 
+import com.owlike.genson.JsonBindingException;
 import io.github.etases.edublock.cc.model.Record;
 import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.util.HashUtil;
 import io.github.etases.edublock.cc.util.JsonUtil;
+import io.github.etases.edublock.cc.util.SelectorUtil;
 import org.assertj.core.api.ThrowableAssert;
 import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -109,6 +118,38 @@ class EduBlockChainCodeTest {
         }
     }
 
+    private static class MockQueryResultsIteratorWithMetadata<T> implements QueryResultsIteratorWithMetadata<T> {
+        protected final List<T> results;
+        private final String bookmark;
+
+        private MockQueryResultsIteratorWithMetadata(List<T> results) {
+            this(results, "");
+        }
+
+        private MockQueryResultsIteratorWithMetadata(List<T> results, String bookmark) {
+            this.results = results;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public ChaincodeShim.QueryResponseMetadata getMetadata() {
+            return ChaincodeShim.QueryResponseMetadata.newBuilder()
+                    .setBookmark(bookmark)
+                    .setFetchedRecordsCount(results.size())
+                    .build();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return results.iterator();
+        }
+    }
+
     @Nested
     class TransientMapTest {
         @Test
@@ -168,6 +209,145 @@ class EduBlockChainCodeTest {
             assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
 
         }
+
+        private byte[] gzip(byte[] value) throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+                gzipOutputStream.write(value);
+            }
+            return outputStream.toByteArray();
+        }
+
+        private void putChunks(Map<String, byte[]> transientMap, String transientKey, byte[] value, int chunkCount) {
+            int chunkSize = (value.length + chunkCount - 1) / chunkCount;
+            for (int i = 0; i < chunkCount; i++) {
+                int from = Math.min(value.length, i * chunkSize);
+                transientMap.put(transientKey + "." + i, Arrays.copyOfRange(value, from, Math.min(value.length, from + chunkSize)));
+            }
+            transientMap.put(transientKey + ".chunks", Integer.toString(chunkCount).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        void getValueFromTransientMapCompressed() throws IOException {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "classification";
+            Classification classification = new Classification("Good", "Bad", "Empty");
+            transientMap.put(transientKey, gzip(JsonUtil.serializeToBytes(classification)));
+            transientMap.put(transientKey + ".encoding", "gzip".getBytes(StandardCharsets.UTF_8));
+
+            Classification classificationOutput = contract.getValueFromTransientMap(ctx, transientKey, Classification.class);
+
+            assertEquals(classification, classificationOutput);
+        }
+
+        @Test
+        void getValueFromTransientMapChunked() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "classification";
+            Classification classification = new Classification("Good", "Bad", "Empty");
+            putChunks(transientMap, transientKey, JsonUtil.serializeToBytes(classification), 3);
+
+            Classification classificationOutput = contract.getValueFromTransientMap(ctx, transientKey, Classification.class);
+
+            assertEquals(classification, classificationOutput);
+        }
+
+        @Test
+        void getValueFromTransientMapCompressedChunked() throws IOException {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "record";
+            Record record = new Record(new TreeMap<>(), 0);
+            for (long classId = 0; classId < 20; classId++) {
+                record.getClassRecords().put(classId, new ClassRecord(2020, 10, "Class " + classId, new HashMap<>(), new Classification("Good", "Good", "Good")));
+            }
+            putChunks(transientMap, transientKey, gzip(JsonUtil.serializeToBytes(record)), 4);
+            transientMap.put(transientKey + ".encoding", "gzip".getBytes(StandardCharsets.UTF_8));
+
+            Record recordOutput = contract.getValueFromTransientMap(ctx, transientKey, Record.class);
+
+            assertEquals(record.getClassRecords(), recordOutput.getClassRecords());
+        }
+
+        @Test
+        void getValueFromTransientMapMissingChunk() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "classification";
+            putChunks(transientMap, transientKey, JsonUtil.serializeToBytes(new Classification("Good", "Bad", "Empty")), 3);
+            transientMap.remove(transientKey + ".1");
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getValueFromTransientMap(ctx, transientKey, Classification.class);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void getValueFromTransientMapUnknownEncoding() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "classification";
+            transientMap.put(transientKey, JsonUtil.serializeToBytes(new Classification("Good", "Bad", "Empty")));
+            transientMap.put(transientKey + ".encoding", "br".getBytes(StandardCharsets.UTF_8));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getValueFromTransientMap(ctx, transientKey, Classification.class);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+        @Test
+        void getValueFromTransientMapOverLimit() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            String transientKey = "classRecord";
+            ClassRecord classRecord = new ClassRecord(2020, 10, "10A", new TreeMap<>(), new Classification("Good", "Good", "Good"));
+            for (long subjectId = 0; subjectId < 100; subjectId++) {
+                classRecord.getSubjects().put(subjectId, new Subject("Subject " + subjectId, 800, 900, 850));
+            }
+            transientMap.put(transientKey, JsonUtil.serializeToBytes(classRecord));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getValueFromTransientMap(ctx, transientKey, ClassRecord.class);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+            assertTrue(chaincodeException.getMessage().length() < 200);
+        }
     }
 
     @Nested
@@ -192,7 +372,7 @@ class EduBlockChainCodeTest {
             personal.setMale(false);
             String collectionName = contract.getCollectionName(ctx);
             String personalSerialized = JsonUtil.serialize(personal);
-            when(stub.getPrivateDataUTF8(collectionName, compositeKey.toString())).thenReturn(personalSerialized);
+            when(stub.getPrivateData(collectionName, compositeKey.toString())).thenReturn(personalSerialized.getBytes(StandardCharsets.UTF_8));
 
             Personal personalOutput = contract.getStudentPersonal(ctx, studentIdInput);
 
@@ -215,7 +395,7 @@ class EduBlockChainCodeTest {
             long studentIdInput = 0;
             String collectionName = contract.getCollectionName(ctx);
 
-            when(stub.getPrivateDataUTF8(collectionName, compositeKey.toString())).thenReturn(null);
+            when(stub.getPrivateData(collectionName, compositeKey.toString())).thenReturn(null);
             ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
                 contract.getStudentPersonal(ctx, studentIdInput);
             }, ChaincodeException.class);
@@ -251,9 +431,77 @@ class EduBlockChainCodeTest {
             long studentIdInput = 0;
             String collectionName = contract.getCollectionName(ctx);
 
-            contract.updateStudentPersonal(ctx, studentIdInput);
+            String output = contract.updateStudentPersonal(ctx, studentIdInput);
+
+            personal.setVersion(1);
+            verify(stub).putPrivateData(collectionName, compositeKey.toString(), JsonUtil.serialize(personal).getBytes(StandardCharsets.UTF_8));
+            assertEquals(new UpdateResult(true, 1), JsonUtil.deserialize(output, UpdateResult.class));
+        }
+
+        @Test
+        void updateStudentPersonalVersionMismatch() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+
+            Personal storedPersonal = new Personal();
+            storedPersonal.setFirstName("Stored");
+            storedPersonal.setVersion(5);
+            String collectionName = contract.getCollectionName(ctx);
+            when(stub.getPrivateData(collectionName, compositeKey.toString())).thenReturn(JsonUtil.serializeToBytes(storedPersonal));
+
+            Personal personal = new Personal();
+            personal.setFirstName("Tester");
+            transientMap.put("personal", JsonUtil.serialize(personal).getBytes(StandardCharsets.UTF_8));
+            transientMap.put("expectedVersion", "4".getBytes(StandardCharsets.UTF_8));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.updateStudentPersonal(ctx, 0);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_VERSION_MISMATCH.name().getBytes(), chaincodeException.getPayload());
+            verify(stub, never()).putPrivateData(anyString(), anyString(), any(byte[].class));
+        }
+
+        @Test
+        void updateStudentPersonalUnchanged() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+
+            Personal personal = new Personal();
+            personal.setFirstName("Tester");
+            byte[] personalSerialized = JsonUtil.serialize(personal).getBytes(StandardCharsets.UTF_8);
+            transientMap.put("personal", personalSerialized);
+
+            String collectionName = contract.getCollectionName(ctx);
+            when(stub.getPrivateDataHash(collectionName, compositeKey.toString())).thenReturn(HashUtil.sha256(personalSerialized));
+
+            String output = contract.updateStudentPersonal(ctx, 0);
 
-            verify(stub).putPrivateData(collectionName, compositeKey.toString(), personalSerialized.getBytes(StandardCharsets.UTF_8));
+            verify(stub, never()).putPrivateData(anyString(), anyString(), any(byte[].class));
+            verify(stub, never()).getPrivateData(anyString(), anyString());
+            assertFalse(JsonUtil.deserialize(output, UpdateResult.class).isChanged());
         }
     }
 
@@ -299,7 +547,7 @@ class EduBlockChainCodeTest {
             record.setClassRecords(classRecordsMap);
             String recordSerialized = JsonUtil.serialize(record);
             long studentIdInput = 0;
-            when(stub.getStringState(contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString())).thenReturn(recordSerialized);
+            when(stub.getState(contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString())).thenReturn(recordSerialized.getBytes(StandardCharsets.UTF_8));
 
             String output = contract.getStudentRecord(ctx, studentIdInput);
             Record recordOutput = JsonUtil.deserialize(output, Record.class);
@@ -322,7 +570,7 @@ class EduBlockChainCodeTest {
 
             long studentIdInput = 0;
 
-            when(stub.getStringState(contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString())).thenReturn(null);
+            when(stub.getState(contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString())).thenReturn(null);
             ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
                 contract.getStudentRecord(ctx, studentIdInput);
             }, ChaincodeException.class);
@@ -343,6 +591,8 @@ class EduBlockChainCodeTest {
             when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
             when(ctx.getClientIdentity()).thenReturn(client);
             when(client.getMSPID()).thenReturn("TestOrg");
+            when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+            when(stub.getTxId()).thenReturn("tx1");
 
             String publicKey = contract.composePublicKey(ctx, Long.toString(0)).toString();
 
@@ -362,9 +612,78 @@ class EduBlockChainCodeTest {
             transientMap.put(transientKey, recordSerialized.getBytes(StandardCharsets.UTF_8));
 
             long studentIdInput = 0;
-            contract.updateStudentRecord(ctx, studentIdInput);
+            String output = contract.updateStudentRecord(ctx, studentIdInput);
+
+            Record storedRecord = Record.clone(record);
+            storedRecord.setVersion(1);
+            verify(stub).putState(publicKey, JsonUtil.serializeToBytes(new StoredRecord(storedRecord, true)));
+            assertEquals(new UpdateResult(true, 1), JsonUtil.deserialize(output, UpdateResult.class));
+        }
+
+        @Test
+        void updateStudentRecordVersionMismatch() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+
+            String publicKey = contract.composePublicKey(ctx, Long.toString(0)).toString();
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+
+            Record storedRecord = Record.clone(null);
+            storedRecord.setVersion(3);
+            when(stub.getState(publicKey)).thenReturn(JsonUtil.serializeToBytes(storedRecord));
+
+            Record record = Record.clone(null);
+            record.getClassRecords().put(0L, ClassRecord.clone(null));
+            transientMap.put("record", JsonUtil.serialize(record).getBytes(StandardCharsets.UTF_8));
+            transientMap.put("expectedVersion", "2".getBytes(StandardCharsets.UTF_8));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.updateStudentRecord(ctx, 0);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_VERSION_MISMATCH.name().getBytes(), chaincodeException.getPayload());
+            verify(stub, never()).putState(anyString(), any());
+        }
+
+        @Test
+        void updateStudentRecordUnchanged() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+
+            String publicKey = contract.composePublicKey(ctx, Long.toString(0)).toString();
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+
+            Record record = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(2020);
+            record.getClassRecords().put(0L, classRecord);
+            transientMap.put("record", JsonUtil.serialize(record).getBytes(StandardCharsets.UTF_8));
+            when(stub.getState(publicKey)).thenReturn(JsonUtil.serializeToBytes(record));
 
-            verify(stub).putStringState(publicKey, recordSerialized);
+            String output = contract.updateStudentRecord(ctx, 0);
+
+            verify(stub, never()).putState(anyString(), any());
+            assertFalse(JsonUtil.deserialize(output, UpdateResult.class).isChanged());
         }
 
         @Test
@@ -377,8 +696,13 @@ class EduBlockChainCodeTest {
             when(compositeKey.toString()).thenReturn("TestCK");
             when(ctx.getStub()).thenReturn(stub);
             when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+            when(stub.createCompositeKey(eq("sealedYear"), any())).thenReturn(new CompositeKey("sealedYear"));
+            when(stub.createCompositeKey(eq("labelDictionary"), any())).thenReturn(new CompositeKey("labelDictionary"));
+            when(stub.createCompositeKey(eq("summary"), any())).thenReturn(new CompositeKey("summary"));
             when(ctx.getClientIdentity()).thenReturn(client);
             when(client.getMSPID()).thenReturn("TestOrg");
+            when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+            when(stub.getTxId()).thenReturn("tx1");
 
             Map<String, byte[]> transientMap = new HashMap<>();
             when(stub.getTransient()).thenReturn(transientMap);
@@ -394,7 +718,7 @@ class EduBlockChainCodeTest {
 
             long studentIdInput = 0;
             String publicKey = contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString();
-            when(stub.getStringState(publicKey)).thenReturn(recordSerialized);
+            when(stub.getState(publicKey)).thenReturn(recordSerialized.getBytes(StandardCharsets.UTF_8));
 
             ClassRecord newClassRecord = new ClassRecord();
             newClassRecord.setYear(2021);
@@ -405,11 +729,12 @@ class EduBlockChainCodeTest {
             Record newRecord = Record.clone(record);
             long classIdInput = 1;
             newRecord.getClassRecords().put(classIdInput, newClassRecord);
-            String newRecordSerialized = JsonUtil.serialize(newRecord);
+            newRecord.setVersion(1);
+            String newRecordSerialized = JsonUtil.serialize(new StoredRecord(Record.clone(newRecord), true));
 
             contract.updateStudentClassRecord(ctx, studentIdInput, classIdInput);
 
-            verify(stub).putStringState(publicKey, newRecordSerialized);
+            verify(stub).putState(publicKey, newRecordSerialized.getBytes(StandardCharsets.UTF_8));
         }
 
         @Test
@@ -424,13 +749,15 @@ class EduBlockChainCodeTest {
             when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
             when(ctx.getClientIdentity()).thenReturn(client);
             when(client.getMSPID()).thenReturn("TestOrg");
+            when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+            when(stub.getTxId()).thenReturn("tx1");
 
             Map<String, byte[]> transientMap = new HashMap<>();
             when(stub.getTransient()).thenReturn(transientMap);
 
             long studentIdInput = 0;
             String publicKey = contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString();
-            when(stub.getStringState(publicKey)).thenReturn("");
+            when(stub.getState(publicKey)).thenReturn(new byte[0]);
 
             ClassRecord classRecord = new ClassRecord();
             classRecord.setYear(2020);
@@ -441,11 +768,12 @@ class EduBlockChainCodeTest {
 
             Record record = Record.clone(null);
             record.getClassRecords().put(classIdInput, classRecord);
-            String newRecordSerialized = JsonUtil.serialize(record);
+            record.setVersion(1);
+            String newRecordSerialized = JsonUtil.serialize(new StoredRecord(Record.clone(record), true));
 
             contract.updateStudentClassRecord(ctx, studentIdInput, classIdInput);
 
-            verify(stub).putStringState(publicKey, newRecordSerialized);
+            verify(stub).putState(publicKey, newRecordSerialized.getBytes(StandardCharsets.UTF_8));
         }
     }
 
@@ -492,6 +820,39 @@ class EduBlockChainCodeTest {
             assertEquals(recordHistoryList, outputRecordHistoryList);
         }
 
+        @Test
+        void getStudentRecordHistoryCompacted() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+
+            Record compacted = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(2021);
+            compacted.getClassRecords().put(1L, classRecord);
+            compacted.setArchivedYears(Collections.singletonList(2020));
+            List<RecordHistory> recordHistories = new ArrayList<>();
+            recordHistories.add(new RecordHistory(Date.from(Instant.EPOCH), compacted, "tx1"));
+
+            long studentIdInput = 0;
+            String publicKey = contract.composePublicKey(ctx, Long.toString(studentIdInput)).toString();
+            when(stub.getHistoryForKey(publicKey)).thenReturn(new MockRecordModificationResultsIterator(new RecordHistoryList(recordHistories)));
+
+            String output = contract.getStudentRecordHistory(ctx, studentIdInput);
+            RecordHistoryList outputRecordHistoryList = JsonUtil.deserialize(output, RecordHistoryList.class);
+
+            Record record = outputRecordHistoryList.getHistories().get(0).getRecord();
+            assertNull(record.getArchivedYears());
+            assertEquals(Collections.singleton(1L), record.getClassRecords().keySet());
+        }
+
         @Test
         void getStudentRecordHistoryEmpty() {
             EduBlockChainCode contract = new EduBlockChainCode();
@@ -706,4 +1067,1303 @@ class EduBlockChainCodeTest {
             }
         }
     }
+
+    @Nested
+    class ChangeLogTest {
+        @Test
+        void appendChangeLog() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String changeLogPrefix = "changelog";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+            when(stub.getTxTimestamp()).thenReturn(Instant.ofEpochSecond(1, 5));
+            when(stub.getTxId()).thenReturn("tx1");
+
+            CompositeKey changeLogKey = new CompositeKey(changeLogPrefix, mspId, clientId, "0000000001000000005", "7");
+            when(stub.createCompositeKey(changeLogPrefix, mspId, clientId, "0000000001000000005", "7")).thenReturn(changeLogKey);
+
+            contract.appendChangeLog(ctx, 7);
+
+            verify(stub).putState(changeLogKey.toString(), "tx1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        void getRecordsModifiedSince() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String changeLogPrefix = "changelog";
+            String recordPrefix = "record";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+
+            CompositeKey prefixKey = new CompositeKey(changeLogPrefix, mspId, clientId);
+            when(stub.createCompositeKey(changeLogPrefix, mspId, clientId)).thenReturn(prefixKey);
+            // Long after the entries, so the bookmark is not held back
+            when(stub.getTxTimestamp()).thenReturn(Instant.ofEpochSecond(1000));
+            when(stub.createCompositeKey(changeLogPrefix, mspId, clientId, "0000000700000000000")).thenReturn(new CompositeKey(changeLogPrefix, mspId, clientId, "0000000700000000000"));
+
+            CompositeKey entry1 = new CompositeKey(changeLogPrefix, mspId, clientId, "0000000000000000001", "1");
+            CompositeKey entry2 = new CompositeKey(changeLogPrefix, mspId, clientId, "0000000000000000002", "2");
+            CompositeKey entry3 = new CompositeKey(changeLogPrefix, mspId, clientId, "0000000000000000003", "1");
+            CompositeKey entry4 = new CompositeKey(changeLogPrefix, mspId, clientId, "0000000000000000004", "3");
+            for (CompositeKey entry : Arrays.asList(entry1, entry2, entry3, entry4)) {
+                when(stub.splitCompositeKey(entry.toString())).thenReturn(entry);
+            }
+
+            Record record1 = Record.clone(null);
+            ClassRecord classRecord1 = ClassRecord.clone(null);
+            classRecord1.setYear(2020);
+            record1.getClassRecords().put(0L, classRecord1);
+            Record record2 = Record.clone(null);
+            CompositeKey recordKey1 = new CompositeKey(recordPrefix, mspId, clientId, "1");
+            CompositeKey recordKey2 = new CompositeKey(recordPrefix, mspId, clientId, "2");
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "1")).thenReturn(recordKey1);
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "2")).thenReturn(recordKey2);
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "3")).thenReturn(new CompositeKey(recordPrefix, mspId, clientId, "3"));
+            when(stub.getState(recordKey1.toString())).thenReturn(JsonUtil.serializeToBytes(record1));
+            when(stub.getState(recordKey2.toString())).thenReturn(JsonUtil.serializeToBytes(record2));
+
+            List<KeyValue> entries = Arrays.asList(
+                    new MockKeyValue(entry1.toString(), "tx1"),
+                    new MockKeyValue(entry2.toString(), "tx2"),
+                    new MockKeyValue(entry3.toString(), "tx3"),
+                    new MockKeyValue(entry4.toString(), "tx4")
+            );
+            when(stub.getStateByPartialCompositeKeyWithPagination(prefixKey, 4, entry1.toString())).thenReturn(new MockQueryResultsIteratorWithMetadata<>(entries));
+
+            String output = contract.getRecordsModifiedSince(ctx, entry1.toString(), 3);
+            RecordPage recordPage = JsonUtil.deserialize(output, RecordPage.class);
+
+            Map<Long, Record> expected = new HashMap<>();
+            expected.put(1L, record1);
+            expected.put(2L, record2);
+            assertEquals(expected, recordPage.getRecords());
+            assertEquals(entry4.toString(), recordPage.getBookmark());
+        }
+
+        @Test
+        void getRecordsModifiedSinceInvalidLimit() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+
+            for (int limit : new int[]{0, 1001, Integer.MAX_VALUE}) {
+                ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                    contract.getRecordsModifiedSince(ctx, "", limit);
+                }, ChaincodeException.class);
+
+                assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+            }
+        }
+    }
+
+    @Nested
+    class MultiGetTest {
+        @Test
+        void getStudentRecords() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String recordPrefix = "record";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+
+            Record record1 = Record.clone(null);
+            record1.getClassRecords().put(0L, ClassRecord.clone(null));
+            CompositeKey recordKey1 = new CompositeKey(recordPrefix, mspId, clientId, "1");
+            CompositeKey recordKey2 = new CompositeKey(recordPrefix, mspId, clientId, "2");
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "1")).thenReturn(recordKey1);
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "2")).thenReturn(recordKey2);
+            when(stub.getState(recordKey1.toString())).thenReturn(JsonUtil.serializeToBytes(record1));
+
+            String output = contract.getStudentRecords(ctx, "[1,2]");
+            RecordMap recordMap = JsonUtil.deserialize(output, RecordMap.class);
+
+            assertEquals(Collections.singletonMap(1L, record1), recordMap.getRecords());
+            assertEquals(Collections.singletonList(2L), recordMap.getMissingIds());
+        }
+
+        @Test
+        void getStudentPersonals() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String personalPrefix = "personal";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+
+            Personal personal2 = new Personal();
+            personal2.setFirstName("Test2");
+            CompositeKey personalKey1 = new CompositeKey(personalPrefix, mspId, clientId, "1");
+            CompositeKey personalKey2 = new CompositeKey(personalPrefix, mspId, clientId, "2");
+            when(stub.createCompositeKey(personalPrefix, mspId, clientId, "1")).thenReturn(personalKey1);
+            when(stub.createCompositeKey(personalPrefix, mspId, clientId, "2")).thenReturn(personalKey2);
+            String collectionName = contract.getCollectionName(ctx);
+            when(stub.getPrivateData(collectionName, personalKey2.toString())).thenReturn(JsonUtil.serializeToBytes(personal2));
+
+            String output = contract.getStudentPersonals(ctx, "[1,2]");
+            PersonalMap personalMap = JsonUtil.deserialize(output, PersonalMap.class);
+
+            assertEquals(Collections.singletonMap(2L, personal2), personalMap.getPersonals());
+            assertEquals(Collections.singletonList(1L), personalMap.getMissingIds());
+        }
+
+        @Test
+        void getStudentRecordsInvalidIds() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentRecords(ctx, "{\"id\":1}");
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class ProfileTest {
+        @Test
+        void getStudentProfile() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+            when(client.getId()).thenReturn("TestClient");
+
+            CompositeKey personalKey = new CompositeKey("personal", "TestOrg", "TestClient", "0");
+            CompositeKey recordKey = new CompositeKey("record", "TestOrg", "TestClient", "0");
+            when(stub.createCompositeKey("personal", "TestOrg", "TestClient", "0")).thenReturn(personalKey);
+            when(stub.createCompositeKey("record", "TestOrg", "TestClient", "0")).thenReturn(recordKey);
+
+            Personal personal = new Personal();
+            personal.setFirstName("Tester");
+            personal.setAvatar("avatar");
+            String collectionName = contract.getCollectionName(ctx);
+            when(stub.getPrivateData(collectionName, personalKey.toString())).thenReturn(JsonUtil.serializeToBytes(personal));
+
+            Record record = Record.clone(null);
+            record.getClassRecords().put(0L, ClassRecord.clone(null));
+            when(stub.getState(recordKey.toString())).thenReturn(JsonUtil.serializeToBytes(record));
+
+            String output = contract.getStudentProfile(ctx, 0, false, false);
+            StudentProfile profile = JsonUtil.deserialize(output, StudentProfile.class);
+
+            personal.setAvatar(null);
+            assertEquals(new StudentProfile(personal, record, null), profile);
+            verify(stub, never()).getHistoryForKey(anyString());
+        }
+
+        @Test
+        void getStudentProfileNotFound() {
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            CompositeKey compositeKey = mock(CompositeKey.class);
+            when(compositeKey.toString()).thenReturn("TestCK");
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.createCompositeKey(anyString(), any())).thenReturn(compositeKey);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn("TestOrg");
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentProfile(ctx, 0, true, true);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_NOT_FOUND.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class QueryTest {
+        @Test
+        void queryStudentRecords() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String recordPrefix = "record";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+
+            Record record = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(2021);
+            record.getClassRecords().put(0L, classRecord);
+            record.getClassRecords().put(1L, classRecord);
+            CompositeKey recordKey = new CompositeKey(recordPrefix, mspId, clientId, "1");
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId, "1")).thenReturn(recordKey);
+            when(stub.getState(recordKey.toString())).thenReturn(JsonUtil.serializeToBytes(record));
+
+            RecordFilter filter = new RecordFilter(2021, null, null, null);
+            String query = SelectorUtil.buildRecordIndexQuery(mspId, clientId, filter);
+            List<KeyValue> results = Arrays.asList(
+                    new MockKeyValue("index0", JsonUtil.serialize(RecordIndex.of(mspId, clientId, 1, 0, classRecord))),
+                    new MockKeyValue("index1", JsonUtil.serialize(RecordIndex.of(mspId, clientId, 1, 1, classRecord)))
+            );
+            when(stub.getQueryResultWithPagination(query, 10, "")).thenReturn(new MockQueryResultsIteratorWithMetadata<>(results, "next"));
+
+            String output = contract.queryStudentRecords(ctx, JsonUtil.serialize(filter), 10, "");
+            RecordPage recordPage = JsonUtil.deserialize(output, RecordPage.class);
+
+            assertEquals(Collections.singletonMap(1L, record), recordPage.getRecords());
+            assertEquals("next", recordPage.getBookmark());
+            verify(stub, times(1)).getState(recordKey.toString());
+        }
+
+        @Test
+        void updateStudentClassRecordWritesIndex() {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+
+            EduBlockChainCode contract = new EduBlockChainCode();
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+            when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+                Object[] arguments = invocation.getArguments();
+                String[] attributes = new String[arguments.length - 1];
+                for (int i = 1; i < arguments.length; i++) {
+                    attributes[i - 1] = (String) arguments[i];
+                }
+                return new CompositeKey((String) arguments[0], attributes);
+            });
+            when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+            when(stub.getTxId()).thenReturn("tx1");
+
+            Map<String, byte[]> transientMap = new HashMap<>();
+            when(stub.getTransient()).thenReturn(transientMap);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(2021);
+            transientMap.put("classRecord", JsonUtil.serialize(classRecord).getBytes(StandardCharsets.UTF_8));
+
+            contract.updateStudentClassRecord(ctx, 1, 2);
+
+            String indexKey = new CompositeKey("recordIndex", mspId, clientId, "1", "2").toString();
+            verify(stub).putState(indexKey, JsonUtil.serializeToBytes(RecordIndex.of(mspId, clientId, 1, 2, classRecord)));
+        }
+    }
+
+    @Nested
+    class RankingTest {
+        private Record record(long classId, int year, int... finalScores) {
+            Record record = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(year);
+            for (int i = 0; i < finalScores.length; i++) {
+                classRecord.getSubjects().put((long) i, new Subject("Subject" + i, 0, 0, finalScores[i]));
+            }
+            record.getClassRecords().put(classId, classRecord);
+            return record;
+        }
+
+        private Context mockContext(Map<Long, Record> records) {
+            String mspId = "TestOrg";
+            String clientId = "TestClient";
+            String recordPrefix = "record";
+
+            Context ctx = mock(Context.class);
+            ClientIdentity client = mock(ClientIdentity.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+
+            CompositeKey prefixKey = new CompositeKey(recordPrefix, mspId, clientId);
+            when(stub.createCompositeKey(recordPrefix, mspId, clientId)).thenReturn(prefixKey);
+            List<KeyValue> results = new ArrayList<>();
+            for (Map.Entry<Long, Record> entry : records.entrySet()) {
+                CompositeKey recordKey = new CompositeKey(recordPrefix, mspId, clientId, entry.getKey().toString());
+                when(stub.splitCompositeKey(recordKey.toString())).thenReturn(recordKey);
+                results.add(new MockKeyValue(recordKey.toString(), JsonUtil.serialize(entry.getValue())));
+            }
+            when(stub.getStateByPartialCompositeKey(prefixKey)).thenReturn(new MockQueryResultsIterator<>(results));
+            return ctx;
+        }
+
+        @Test
+        void getTopStudents() {
+            Map<Long, Record> records = new LinkedHashMap<>();
+            records.put(1L, record(0, 2021, 600, 800));
+            records.put(2L, record(0, 2021, 900, 900));
+            records.put(3L, record(0, 2021, 500, 500));
+            records.put(4L, record(1, 2020, 1000, 1000));
+            records.put(5L, record(0, 2021, 700, 700));
+            Context ctx = mockContext(records);
+
+            String output = new EduBlockChainCode().getTopStudents(ctx, 2, -1, -1, 2021);
+            RankingList rankingList = JsonUtil.deserialize(output, RankingList.class);
+
+            assertEquals(Arrays.asList(new RankingEntry(2, 9), new RankingEntry(1, 7)), rankingList.getEntries());
+        }
+
+        @Test
+        void getTopStudentsBySubject() {
+            Map<Long, Record> records = new LinkedHashMap<>();
+            records.put(1L, record(0, 2021, 600, 800));
+            records.put(2L, record(0, 2021, 900, 700));
+            records.put(3L, record(0, 2021, 500));
+            records.put(4L, record(1, 2021, 300, 1000));
+            Context ctx = mockContext(records);
+
+            String output = new EduBlockChainCode().getTopStudents(ctx, 10, 0, 1, 0);
+            RankingList rankingList = JsonUtil.deserialize(output, RankingList.class);
+
+            assertEquals(Arrays.asList(new RankingEntry(1, 8), new RankingEntry(2, 7)), rankingList.getEntries());
+        }
+
+        @Test
+        void getTopStudentsInvalidLimit() {
+            Context ctx = mockContext(Collections.emptyMap());
+
+            for (int limit : new int[]{0, 1001, Integer.MAX_VALUE}) {
+                ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                    new EduBlockChainCode().getTopStudents(ctx, limit, -1, -1, 0);
+                }, ChaincodeException.class);
+
+                assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+            }
+        }
+    }
+
+    /**
+     * Backs the stub with an in-memory world state
+     */
+    abstract class InMemoryLedgerTest {
+        final String mspId = "TestOrg";
+        final String clientId = "TestClient";
+        final EduBlockChainCode contract = new EduBlockChainCode();
+        final Context ctx = mock(Context.class);
+        final ChaincodeStub stub = mock(ChaincodeStub.class);
+        final Map<String, byte[]> transientMap = new HashMap<>();
+        final InMemoryLedger ledger = new InMemoryLedger();
+        final TreeMap<String, byte[]> state = ledger.state;
+
+        InMemoryLedgerTest() {
+            ClientIdentity client = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(client);
+            when(client.getMSPID()).thenReturn(mspId);
+            when(client.getId()).thenReturn(clientId);
+            when(stub.getTransient()).thenReturn(transientMap);
+            when(stub.getTxTimestamp()).thenReturn(Instant.EPOCH);
+            when(stub.getTxId()).thenReturn("tx1");
+            ledger.attach(stub);
+        }
+    }
+
+    @Nested
+    class ImportTest extends InMemoryLedgerTest {
+        private void putChunk(long studentId, long classId, int year) {
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(year);
+            Record record = Record.clone(null);
+            record.getClassRecords().put(classId, classRecord);
+            Map<Long, Record> records = new HashMap<>();
+            records.put(studentId, record);
+            transientMap.put("records", JsonUtil.serializeToBytes(new RecordMap(records)));
+        }
+
+        private Record getRecord(long studentId) {
+            return JsonUtil.deserialize(contract.getStudentRecord(ctx, studentId), Record.class);
+        }
+
+        @Test
+        void createImportBatch() {
+            contract.createImportBatch(ctx, "batch1", 3);
+
+            assertEquals(new ImportBatch("batch1", 3), JsonUtil.deserialize(contract.createImportBatch(ctx, "batch1", 3), ImportBatch.class));
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.createImportBatch(ctx, "batch1", 4);
+            }, ChaincodeException.class);
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_ALREADY_EXISTS.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void importStudentRecords() {
+            contract.createImportBatch(ctx, "batch1", 3);
+            Record existing = Record.clone(null);
+            existing.getClassRecords().put(1L, ClassRecord.clone(null));
+            state.put(new CompositeKey("record", mspId, clientId, "7").toString(), JsonUtil.serializeToBytes(existing));
+
+            putChunk(7, 2, 2021);
+            ImportChunkResult first = JsonUtil.deserialize(contract.importStudentRecords(ctx, "batch1", 0), ImportChunkResult.class);
+            putChunk(8, 2, 2021);
+            ImportChunkResult second = JsonUtil.deserialize(contract.importStudentRecords(ctx, "batch1", 2), ImportChunkResult.class);
+
+            assertEquals(new ImportChunkResult(true, 1), first);
+            assertEquals(new ImportChunkResult(true, 1), second);
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), getRecord(7).getClassRecords().keySet());
+            assertEquals(2021, getRecord(8).getClassRecords().get(2L).getYear());
+
+            ImportStatus status = JsonUtil.deserialize(contract.getImportBatchStatus(ctx, "batch1"), ImportStatus.class);
+            assertEquals(new ImportStatus("batch1", 3, 2, Collections.singletonList(1), false), status);
+        }
+
+        @Test
+        void importStudentRecordsAppliedOnce() {
+            contract.createImportBatch(ctx, "batch1", 1);
+            putChunk(7, 2, 2021);
+            contract.importStudentRecords(ctx, "batch1", 0);
+
+            putChunk(7, 2, 2022);
+            ImportChunkResult result = JsonUtil.deserialize(contract.importStudentRecords(ctx, "batch1", 0), ImportChunkResult.class);
+
+            assertFalse(result.isApplied());
+            assertEquals(2021, getRecord(7).getClassRecords().get(2L).getYear());
+            assertTrue(JsonUtil.deserialize(contract.getImportBatchStatus(ctx, "batch1"), ImportStatus.class).isComplete());
+        }
+
+        @Test
+        void importStudentRecordsInvalidChunk() {
+            contract.createImportBatch(ctx, "batch1", 2);
+            putChunk(7, 2, 2021);
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.importStudentRecords(ctx, "batch1", 2);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void importStudentRecordsBatchNotFound() {
+            putChunk(7, 2, 2021);
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.importStudentRecords(ctx, "batch1", 0);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_NOT_FOUND.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class ScoreMigrationTest extends InMemoryLedgerTest {
+        private final String recordKey = new CompositeKey("record", mspId, clientId, "7").toString();
+
+        @Test
+        void migrateStudentRecords() {
+            String legacyState = "{\"classRecords\":{\"1\":{\"className\":\"10A\",\"grade\":10,\"subjects\":{\"0\":"
+                    + "{\"finalScore\":8.300000190734863,\"firstHalfScore\":7.699999809265137,\"name\":\"Math\",\"secondHalfScore\":9.0}},\"year\":2020}},\"version\":3}";
+            state.put(recordKey, legacyState.getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(1, contract.migrateStudentRecords(ctx, "[7, 8]"));
+
+            String migratedState = new String(state.get(recordKey), StandardCharsets.UTF_8);
+            assertTrue(migratedState.contains("{\"finalScore\":8.3,\"firstHalfScore\":7.7,\"name\":\"0\",\"secondHalfScore\":9}"));
+            Record record = JsonUtil.deserialize(contract.getStudentRecord(ctx, 7), Record.class);
+            assertEquals(3, record.getVersion());
+            assertEquals("Math", record.getClassRecords().get(1L).getSubjects().get(0L).getName());
+            assertEquals(830, record.getClassRecords().get(1L).getSubjects().get(0L).getFinalScore());
+            assertEquals(0, contract.migrateStudentRecords(ctx, "[7]"));
+        }
+    }
+
+    @Nested
+    class ShardTest extends InMemoryLedgerTest {
+        private static final int STUDENT_COUNT = 450;
+
+        ShardTest() {
+            String collectionName = contract.getCollectionName(ctx);
+            for (long studentId = 0; studentId < STUDENT_COUNT; studentId++) {
+                Record record = Record.clone(null);
+                record.setVersion(studentId);
+                state.put(new CompositeKey("record", mspId, clientId, Long.toString(studentId)).toString(), JsonUtil.serializeToBytes(record));
+                Personal personal = new Personal();
+                personal.setVersion(studentId);
+                ledger.collection(collectionName).put(new CompositeKey("personal", mspId, clientId, Long.toString(studentId)).toString(), JsonUtil.serializeToBytes(personal));
+            }
+            // A key of another type after the records, which the last shard must not read
+            state.put(new CompositeKey("recordZ", mspId, clientId, "0").toString(), new byte[]{1});
+        }
+
+        @Test
+        void getStudentRecordsInShard() {
+            int shardCount = 3;
+            Set<Long> studentIds = new HashSet<>();
+            for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                RecordMap recordMap = JsonUtil.deserialize(contract.getStudentRecordsInShard(ctx, shardIndex, shardCount), RecordMap.class);
+                for (Map.Entry<Long, Record> entry : recordMap.getRecords().entrySet()) {
+                    assertTrue(studentIds.add(entry.getKey()));
+                    assertEquals((long) entry.getKey(), entry.getValue().getVersion());
+                }
+            }
+
+            assertEquals(STUDENT_COUNT, studentIds.size());
+            Set<Long> firstShard = JsonUtil.deserialize(contract.getStudentRecordsInShard(ctx, 0, shardCount), RecordMap.class).getRecords().keySet();
+            assertTrue(firstShard.containsAll(Arrays.asList(0L, 1L, 10L, 100L, 333L)));
+            assertFalse(firstShard.contains(334L));
+        }
+
+        @Test
+        void getStudentPersonalsInShard() {
+            int shardCount = 4;
+            Set<Long> studentIds = new HashSet<>();
+            for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                PersonalMap personalMap = JsonUtil.deserialize(contract.getStudentPersonalsInShard(ctx, shardIndex, shardCount), PersonalMap.class);
+                for (Long studentId : personalMap.getPersonals().keySet()) {
+                    assertTrue(studentIds.add(studentId));
+                }
+            }
+
+            assertEquals(STUDENT_COUNT, studentIds.size());
+        }
+
+        @Test
+        void getStudentRecordsInShardInvalid() {
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentRecordsInShard(ctx, 2, 2);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class StateBufferTest extends InMemoryLedgerTest {
+        private final EduBlockContext bufferedCtx = mock(EduBlockContext.class);
+        private final StateBuffer stateBuffer = new StateBuffer(stub);
+        private final String recordKey = new CompositeKey("record", mspId, clientId, "7").toString();
+
+        StateBufferTest() {
+            ClientIdentity client = ctx.getClientIdentity();
+            when(bufferedCtx.getStub()).thenReturn(stub);
+            when(bufferedCtx.getClientIdentity()).thenReturn(client);
+            when(bufferedCtx.getStateBuffer()).thenReturn(stateBuffer);
+        }
+
+        private ClassRecord classRecord(int year) {
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(year);
+            return classRecord;
+        }
+
+        @Test
+        void readYourWrites() {
+            Record record = Record.clone(null);
+            record.getClassRecords().put(1L, classRecord(2020));
+            transientMap.put("record", JsonUtil.serializeToBytes(record));
+            contract.updateStudentRecord(bufferedCtx, 7);
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2021)));
+            String output = contract.updateStudentClassRecord(bufferedCtx, 7, 2);
+
+            assertEquals(new UpdateResult(true, 2), JsonUtil.deserialize(output, UpdateResult.class));
+            assertFalse(state.containsKey(recordKey));
+            assertEquals(2, JsonUtil.deserialize(contract.getStudentRecord(bufferedCtx, 7), Record.class).getClassRecords().size());
+
+            contract.afterTransaction(bufferedCtx, output);
+
+            verify(stub, times(1)).putState(eq(recordKey), any());
+            Record stored = JsonUtil.deserialize(contract.getStudentRecord(ctx, 7), Record.class);
+            assertEquals(2, stored.getVersion());
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), stored.getClassRecords().keySet());
+        }
+
+        @Test
+        void deleteThenPut() {
+            state.put("key", new byte[]{1});
+            stateBuffer.delState("key");
+            assertNull(stateBuffer.getState("key"));
+            assertArrayEquals(new byte[]{1}, state.get("key"));
+
+            stateBuffer.putState("key", new byte[]{2});
+            stateBuffer.delState("other");
+            assertEquals(2, stateBuffer.flush());
+
+            assertArrayEquals(new byte[]{2}, state.get("key"));
+            verify(stub).delState("other");
+            assertEquals(0, stateBuffer.flush());
+        }
+
+        @Test
+        void decodeOnce() {
+            state.put("key", new byte[]{1});
+            int[] decoded = {0};
+            Function<byte[], Record> deserializer = value -> {
+                decoded[0]++;
+                return Record.clone(null);
+            };
+
+            Record first = stateBuffer.getValue("key", Record.class, deserializer);
+            Record second = stateBuffer.getValue("key", Record.class, deserializer);
+
+            assertSame(first, second);
+            assertEquals(1, decoded[0]);
+            verify(stub, times(1)).getState("key");
+        }
+
+        @Test
+        void serializeOnceAtFlush() {
+            int[] serialized = {0, 0};
+            Record record = Record.clone(null);
+            stateBuffer.putValue("key", Record.clone(null), () -> {
+                serialized[0]++;
+                return new byte[]{1};
+            });
+            stateBuffer.putValue("key", record, () -> {
+                serialized[1]++;
+                return new byte[]{2};
+            });
+
+            assertSame(record, stateBuffer.getValue("key", Record.class, value -> fail("The pending value is not decoded")));
+            assertArrayEquals(new int[]{0, 0}, serialized);
+            stateBuffer.flush();
+
+            assertArrayEquals(new int[]{0, 1}, serialized);
+            assertArrayEquals(new byte[]{2}, state.get("key"));
+        }
+
+        @Test
+        void privateDataReadYourWrites() {
+            String collectionName = contract.getCollectionName(ctx);
+            String personalKey = new CompositeKey("personal", mspId, clientId, "7").toString();
+            Personal personal = new Personal();
+            personal.setFirstName("First");
+            transientMap.put("personal", JsonUtil.serializeToBytes(personal));
+            contract.updateStudentPersonal(bufferedCtx, 7);
+
+            assertEquals("First", contract.getStudentPersonal(bufferedCtx, 7).getFirstName());
+            assertFalse(ledger.collection(collectionName).containsKey(personalKey));
+            // Unchanged against the pending personal
+            assertEquals(new UpdateResult(false, 1), JsonUtil.deserialize(contract.updateStudentPersonal(bufferedCtx, 7), UpdateResult.class));
+
+            contract.afterTransaction(bufferedCtx, null);
+
+            verify(stub, times(1)).putPrivateData(eq(collectionName), eq(personalKey), any(byte[].class));
+            assertEquals("First", contract.getStudentPersonal(ctx, 7).getFirstName());
+        }
+    }
+
+    @Nested
+    class CollectionFanOutTest extends InMemoryLedgerTest {
+        private final String personalKey = new CompositeKey("personal", mspId, clientId, "7").toString();
+
+        CollectionFanOutTest() {
+            Personal first = new Personal();
+            first.setFirstName("First");
+            ledger.collection("first").put(personalKey, JsonUtil.serializeToBytes(first));
+            Personal second = new Personal();
+            second.setFirstName("Second");
+            ledger.collection("second").put(personalKey, JsonUtil.serializeToBytes(second));
+            when(stub.getPrivateData(eq("denied"), anyString())).thenThrow(new RuntimeException("tx creator does not have read access permission"));
+            when(stub.getPrivateDataByPartialCompositeKey(eq("denied"), any(CompositeKey.class))).thenThrow(new RuntimeException("tx creator does not have read access permission"));
+        }
+
+        @Test
+        void getStudentPersonalsFromCollections() {
+            String output = contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"second\", \"denied\", \"empty\"]", "[7, 8]");
+            CollectionPersonalMap collectionPersonalMap = JsonUtil.deserialize(output, CollectionPersonalMap.class);
+
+            assertEquals(new HashSet<>(Arrays.asList("first", "second", "empty")), collectionPersonalMap.getCollections().keySet());
+            assertEquals("First", collectionPersonalMap.getCollections().get("first").getPersonals().get(7L).getFirstName());
+            assertEquals("Second", collectionPersonalMap.getCollections().get("second").getPersonals().get(7L).getFirstName());
+            assertEquals(Collections.singletonList(8L), collectionPersonalMap.getCollections().get("first").getMissingIds());
+            assertEquals(Arrays.asList(7L, 8L), collectionPersonalMap.getCollections().get("empty").getMissingIds());
+            assertEquals(Collections.singleton("denied"), collectionPersonalMap.getSkippedCollections().keySet());
+        }
+
+        @Test
+        void getAllStudentPersonalsFromCollections() {
+            String output = contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"denied\", \"second\"]", "");
+            CollectionPersonalMap collectionPersonalMap = JsonUtil.deserialize(output, CollectionPersonalMap.class);
+
+            assertEquals(Collections.singleton(7L), collectionPersonalMap.getCollections().get("first").getPersonals().keySet());
+            assertEquals("Second", collectionPersonalMap.getCollections().get("second").getPersonals().get(7L).getFirstName());
+            assertEquals(Collections.singleton("denied"), collectionPersonalMap.getSkippedCollections().keySet());
+        }
+
+        @Test
+        void getStudentPersonalsFromCorruptCollection() {
+            ledger.collection("corrupt").put(personalKey, "{\"version\": \"x\"}".getBytes(StandardCharsets.UTF_8));
+
+            assertThrows(JsonBindingException.class, () -> contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"corrupt\"]", "[7]"));
+        }
+
+        @Test
+        void getStudentPersonalsFromUndefinedCollection() {
+            when(stub.getPrivateData(eq("undefined"), anyString())).thenThrow(new RuntimeException("collection mychannel/edublock/undefined could not be found"));
+
+            String output = contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"undefined\"]", "[7]");
+            CollectionPersonalMap collectionPersonalMap = JsonUtil.deserialize(output, CollectionPersonalMap.class);
+
+            assertEquals(Collections.singleton("first"), collectionPersonalMap.getCollections().keySet());
+            assertEquals("collection mychannel/edublock/undefined could not be found", collectionPersonalMap.getSkippedCollections().get("undefined"));
+        }
+
+        @Test
+        void getStudentPersonalsFromCollectionsPeerFailure() {
+            when(stub.getPrivateData(eq("failing"), anyString())).thenThrow(new RuntimeException("failed to get private data"));
+
+            assertThrows(RuntimeException.class, () -> contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"failing\"]", "[7]"));
+        }
+
+        @Test
+        void getStudentPersonalsFromNonMemberCollection() {
+            // A non-member peer holds the hash of the personal, not the personal
+            when(stub.getPrivateData(eq("nonMember"), anyString())).thenReturn(null);
+            when(stub.getPrivateDataHash("nonMember", personalKey)).thenReturn(new byte[]{1});
+
+            String output = contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"nonMember\", \"empty\"]", "[7, 8]");
+            CollectionPersonalMap collectionPersonalMap = JsonUtil.deserialize(output, CollectionPersonalMap.class);
+
+            assertEquals(new HashSet<>(Arrays.asList("first", "empty")), collectionPersonalMap.getCollections().keySet());
+            assertEquals(Collections.singleton("nonMember"), collectionPersonalMap.getSkippedCollections().keySet());
+        }
+
+        @Test
+        void getStudentPersonalsFromCollectionsInvalidNames() {
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentPersonalsFromCollections(ctx, "[\"first\", \"\"]", "[7]");
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class AvatarTest extends InMemoryLedgerTest {
+        private final String avatar = "data:image/png;base64,iVBORw0KGgo=";
+        private final String avatarHash = HashUtil.toHex(HashUtil.sha256(avatar.getBytes(StandardCharsets.UTF_8)));
+        private final String avatarKey = new CompositeKey("avatar", mspId, clientId, avatarHash).toString();
+        private final String personalKey = new CompositeKey("personal", mspId, clientId, "7").toString();
+
+        private Map<String, byte[]> collection() {
+            return ledger.collection(contract.getCollectionName(ctx));
+        }
+
+        private void updatePersonal(String firstName, String avatar, String avatarHash) {
+            Personal personal = new Personal();
+            personal.setFirstName(firstName);
+            personal.setAvatar(avatar);
+            personal.setAvatarHash(avatarHash);
+            transientMap.put("personal", JsonUtil.serializeToBytes(personal));
+            contract.updateStudentPersonal(ctx, 7);
+        }
+
+        @Test
+        void updateStudentPersonal() {
+            updatePersonal("Tester", avatar, null);
+
+            Personal stored = JsonUtil.deserialize(collection().get(personalKey), Personal.class);
+            assertNull(stored.getAvatar());
+            assertEquals(avatarHash, stored.getAvatarHash());
+            assertArrayEquals(avatar.getBytes(StandardCharsets.UTF_8), collection().get(avatarKey));
+            assertNull(contract.getStudentPersonal(ctx, 7).getAvatar());
+            assertEquals(avatar, contract.getStudentAvatar(ctx, 7));
+            StudentProfile profile = JsonUtil.deserialize(contract.getStudentProfile(ctx, 7, true, false), StudentProfile.class);
+            assertEquals(avatar, profile.getPersonal().getAvatar());
+        }
+
+        @Test
+        void updateStudentPersonalSameAvatar() {
+            updatePersonal("Tester", avatar, null);
+            byte[] avatarState = collection().get(avatarKey);
+
+            updatePersonal("Renamed", avatar, null);
+            updatePersonal("Renamed again", null, avatarHash);
+
+            assertSame(avatarState, collection().get(avatarKey));
+            Personal stored = contract.getStudentPersonal(ctx, 7);
+            assertEquals("Renamed again", stored.getFirstName());
+            assertEquals(avatarHash, stored.getAvatarHash());
+            assertEquals(3, stored.getVersion());
+        }
+
+        @Test
+        void updateStudentPersonalUnknownAvatarHash() {
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                updatePersonal("Tester", null, avatarHash);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_NOT_FOUND.name().getBytes(), chaincodeException.getPayload());
+            assertFalse(collection().containsKey(personalKey));
+        }
+
+        @Test
+        void getStudentAvatarLegacy() {
+            Personal personal = new Personal();
+            personal.setAvatar(avatar);
+            collection().put(personalKey, JsonUtil.serializeToBytes(personal));
+
+            assertEquals(avatar, contract.getStudentAvatar(ctx, 7));
+        }
+
+        @Test
+        void getStudentAvatarNotFound() {
+            updatePersonal("Tester", null, null);
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentAvatar(ctx, 7);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_NOT_FOUND.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class LabelDictionaryTest extends InMemoryLedgerTest {
+        private final String recordKey = new CompositeKey("record", mspId, clientId, "7").toString();
+        private final String dictionaryKey = new CompositeKey("labelDictionary", mspId).toString();
+
+        private Record record(String... subjectNames) {
+            Record record = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(2020);
+            classRecord.setClassification(new Classification("Good", "Excellent", "Good"));
+            for (int i = 0; i < subjectNames.length; i++) {
+                classRecord.getSubjects().put((long) i, new Subject(subjectNames[i], 800, 800, 800));
+            }
+            record.getClassRecords().put(1L, classRecord);
+            return record;
+        }
+
+        @Test
+        void updateStudentRecord() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record("Math", "Physics")));
+            contract.updateStudentRecord(ctx, 7);
+
+            StoredRecord stored = JsonUtil.deserialize(state.get(recordKey), StoredRecord.class);
+            assertTrue(stored.isLabelsEncoded());
+            ClassRecord storedClassRecord = stored.getClassRecords().get(1L);
+            assertEquals("0", storedClassRecord.getSubjects().get(0L).getName());
+            assertEquals("1", storedClassRecord.getSubjects().get(1L).getName());
+            assertEquals(new Classification("2", "3", "2"), storedClassRecord.getClassification());
+            LabelDictionary dictionary = JsonUtil.deserialize(state.get(dictionaryKey), LabelDictionary.class);
+            assertEquals(Arrays.asList("Math", "Physics", "Good", "Excellent"), dictionary.getLabels());
+
+            String output = contract.getStudentRecord(ctx, 7);
+            assertFalse(output.contains("labelsEncoded"));
+            Record record = JsonUtil.deserialize(output, Record.class);
+            assertEquals("Physics", record.getClassRecords().get(1L).getSubjects().get(1L).getName());
+            assertEquals(new Classification("Good", "Excellent", "Good"), record.getClassRecords().get(1L).getClassification());
+        }
+
+        @Test
+        void updateStudentRecordKnownLabels() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record("Math")));
+            contract.updateStudentRecord(ctx, 7);
+            byte[] dictionaryState = state.get(dictionaryKey);
+
+            transientMap.put("record", JsonUtil.serializeToBytes(record("Math", "Math")));
+            contract.updateStudentRecord(ctx, 7);
+
+            assertSame(dictionaryState, state.get(dictionaryKey));
+            assertEquals("0", JsonUtil.deserialize(state.get(recordKey), StoredRecord.class).getClassRecords().get(1L).getSubjects().get(1L).getName());
+        }
+
+        @Test
+        void updateStudentRecordOtherClient() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record("Math")));
+            contract.updateStudentRecord(ctx, 7);
+
+            when(ctx.getClientIdentity().getId()).thenReturn("OtherClient");
+            transientMap.put("record", JsonUtil.serializeToBytes(record("Math", "Physics")));
+            contract.updateStudentRecord(ctx, 7);
+
+            LabelDictionary dictionary = JsonUtil.deserialize(state.get(dictionaryKey), LabelDictionary.class);
+            assertEquals(Arrays.asList("Math", "Good", "Excellent", "Physics"), dictionary.getLabels());
+            StoredRecord stored = JsonUtil.deserialize(state.get(new CompositeKey("record", mspId, "OtherClient", "7").toString()), StoredRecord.class);
+            assertEquals("3", stored.getClassRecords().get(1L).getSubjects().get(1L).getName());
+        }
+
+        @Test
+        void getStudentRecordLegacy() {
+            Record legacy = record("Math");
+            state.put(recordKey, JsonUtil.serializeToBytes(legacy));
+
+            Record record = JsonUtil.deserialize(contract.getStudentRecord(ctx, 7), Record.class);
+
+            assertEquals("Math", record.getClassRecords().get(1L).getSubjects().get(0L).getName());
+            transientMap.put("record", JsonUtil.serializeToBytes(legacy));
+            assertFalse(JsonUtil.deserialize(contract.updateStudentRecord(ctx, 7), UpdateResult.class).isChanged());
+        }
+
+        @Test
+        void getStudentRecordUnknownCode() {
+            state.put(recordKey, JsonUtil.serializeToBytes(new StoredRecord(record("Math"), true)));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.getStudentRecord(ctx, 7);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+    }
+
+    @Nested
+    class ArchiveTest extends InMemoryLedgerTest {
+        private final String recordKey = new CompositeKey("record", mspId, clientId, "7").toString();
+
+        ArchiveTest() {
+            Record record = Record.clone(null);
+            record.getClassRecords().put(1L, classRecord(2020, "10A"));
+            record.getClassRecords().put(2L, classRecord(2021, "11A"));
+            state.put(recordKey, JsonUtil.serializeToBytes(record));
+        }
+
+        private ClassRecord classRecord(int year, String className) {
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(year);
+            classRecord.setClassName(className);
+            return classRecord;
+        }
+
+        private StoredRecord getStoredRecord() {
+            return JsonUtil.deserialize(state.get(recordKey), StoredRecord.class);
+        }
+
+        private void sealAndCompact() {
+            contract.sealStudentRecordYear(ctx, 2020);
+            assertEquals(1, contract.compactStudentRecords(ctx, 2020, "[7, 8]"));
+        }
+
+        @Test
+        void compactStudentRecords() {
+            sealAndCompact();
+
+            Record stored = getStoredRecord();
+            assertEquals(Collections.singleton(2L), stored.getClassRecords().keySet());
+            assertEquals(Collections.singletonList(2020), stored.getArchivedYears());
+            assertEquals(0, stored.getVersion());
+            byte[] archive = state.get(new CompositeKey("recordArchive", mspId, clientId, "7", "2020").toString());
+            assertEquals((byte) 0x1f, archive[0]);
+            assertEquals((byte) 0x8b, archive[1]);
+
+            Record record = JsonUtil.deserialize(contract.getStudentRecord(ctx, 7), Record.class);
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), record.getClassRecords().keySet());
+            assertNull(record.getArchivedYears());
+        }
+
+        @Test
+        void compactStudentRecordsNotSealed() {
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.compactStudentRecords(ctx, 2020, "[7]");
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_INVALID.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void getStudentRecordByYear() {
+            sealAndCompact();
+
+            Record archived = JsonUtil.deserialize(contract.getStudentRecordByYear(ctx, 7, 2020), Record.class);
+            Record current = JsonUtil.deserialize(contract.getStudentRecordByYear(ctx, 7, 2021), Record.class);
+
+            assertEquals("10A", archived.getClassRecords().get(1L).getClassName());
+            assertEquals(Collections.singleton(1L), archived.getClassRecords().keySet());
+            assertEquals(Collections.singleton(2L), current.getClassRecords().keySet());
+        }
+
+        @Test
+        void updateArchivedClassRecord() {
+            sealAndCompact();
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2020, "10B")));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.updateStudentClassRecord(ctx, 7, 1);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_SEALED.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void updateSealedClassRecordBeforeCompaction() {
+            contract.sealStudentRecordYear(ctx, 2020);
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2020, "10B")));
+
+            ChaincodeException chaincodeException = ThrowableAssert.catchThrowableOfType(() -> {
+                contract.updateStudentClassRecord(ctx, 7, 1);
+            }, ChaincodeException.class);
+
+            assertArrayEquals(EduBlockChainCode.AssetErrors.ASSET_SEALED.name().getBytes(), chaincodeException.getPayload());
+        }
+
+        @Test
+        void updateAssembledRecord() {
+            sealAndCompact();
+            Record record = JsonUtil.deserialize(contract.getStudentRecord(ctx, 7), Record.class);
+            record.getClassRecords().get(2L).setClassName("11B");
+            transientMap.put("record", JsonUtil.serializeToBytes(record));
+
+            UpdateResult result = JsonUtil.deserialize(contract.updateStudentRecord(ctx, 7), UpdateResult.class);
+
+            assertEquals(new UpdateResult(true, 1), result);
+            Record stored = getStoredRecord();
+            assertEquals(Collections.singleton(2L), stored.getClassRecords().keySet());
+            assertEquals("11B", stored.getClassRecords().get(2L).getClassName());
+            assertEquals(Collections.singletonList(2020), stored.getArchivedYears());
+        }
+    }
+
+    @Nested
+    class ChangeLogLookbackTest extends InMemoryLedgerTest {
+        private Instant now;
+
+        ChangeLogLookbackTest() {
+            when(stub.getTxTimestamp()).thenAnswer(invocation -> now);
+            state.put(new CompositeKey("record", mspId, clientId, "1").toString(), JsonUtil.serializeToBytes(Record.clone(null)));
+            state.put(new CompositeKey("record", mspId, clientId, "2").toString(), JsonUtil.serializeToBytes(Record.clone(null)));
+        }
+
+        private void appendChangeLog(long timestamp, long studentId) {
+            now = Instant.ofEpochSecond(timestamp);
+            contract.appendChangeLog(ctx, studentId);
+        }
+
+        private RecordPage read(long timestamp, String bookmark, int limit) {
+            now = Instant.ofEpochSecond(timestamp);
+            return JsonUtil.deserialize(contract.getRecordsModifiedSince(ctx, bookmark, limit), RecordPage.class);
+        }
+
+        @Test
+        void lateEntryIsRead() {
+            appendChangeLog(1000, 1);
+            RecordPage first = read(1010, "", 10);
+            // Stamped before the entry already read, but committed after it
+            appendChangeLog(990, 2);
+            RecordPage second = read(1020, first.getBookmark(), 10);
+
+            assertEquals(Collections.singleton(1L), first.getRecords().keySet());
+            assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), second.getRecords().keySet());
+        }
+
+        @Test
+        void bookmarkMovesPastTheWindow() {
+            appendChangeLog(1000, 1);
+            RecordPage page = read(2000, "", 10);
+
+            assertEquals(new CompositeKey("changelog", mspId, clientId, "0000001000000000000", "1").toString(), page.getBookmark());
+            assertTrue(read(2000, page.getBookmark(), 10).getRecords().isEmpty());
+        }
+
+        @Test
+        void fullPagesMoveOn() {
+            appendChangeLog(1000, 1);
+            appendChangeLog(1001, 2);
+            RecordPage first = read(1010, "", 1);
+            RecordPage second = read(1010, first.getBookmark(), 1);
+
+            assertEquals(Collections.singleton(1L), first.getRecords().keySet());
+            assertEquals(Collections.singleton(2L), second.getRecords().keySet());
+        }
+    }
+
+    @Nested
+    class SummaryTest extends InMemoryLedgerTest {
+        private final String summaryKey = new CompositeKey("summary", mspId, clientId, "7").toString();
+
+        private ClassRecord classRecord(int year, int grade, String finalClassify, int... finalScores) {
+            ClassRecord classRecord = new ClassRecord(year, grade, grade + "A", new TreeMap<>(), new Classification(null, null, finalClassify));
+            for (int i = 0; i < finalScores.length; i++) {
+                classRecord.getSubjects().put((long) i, new Subject("Subject " + i, 0, 0, finalScores[i]));
+            }
+            return classRecord;
+        }
+
+        private Record record() {
+            Record record = Record.clone(null);
+            record.getClassRecords().put(1L, classRecord(2020, 10, "Good", 700, 850));
+            record.getClassRecords().put(2L, classRecord(2021, 11, "Excellent", 900, 925, 950));
+            return record;
+        }
+
+        private StudentSummary getStoredSummary() {
+            return JsonUtil.deserialize(state.get(summaryKey), StudentSummary.class);
+        }
+
+        @Test
+        void updateStudentRecord() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+
+            StudentSummary summary = getStoredSummary();
+            assertEquals(new YearSummary(7.75f, "Good"), summary.getYears().get(2020));
+            assertEquals(new YearSummary(9.25f, "Excellent"), summary.getYears().get(2021));
+            assertEquals("Excellent", summary.getLatestFinalClassify());
+            assertEquals(1, summary.getVersion());
+        }
+
+        @Test
+        void updateStudentClassRecord() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+            transientMap.clear();
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2022, 12, "Average", 500)));
+            contract.updateStudentClassRecord(ctx, 7, 3);
+
+            StudentSummary summary = getStoredSummary();
+            assertEquals(Arrays.asList(2020, 2021, 2022), new ArrayList<>(summary.getYears().keySet()));
+            assertEquals("Average", summary.getLatestFinalClassify());
+            assertEquals(2, summary.getVersion());
+        }
+
+        @Test
+        void highestGradeOfYear() {
+            Record record = Record.clone(null);
+            record.getClassRecords().put(1L, classRecord(2020, 11, "Excellent", 900));
+            record.getClassRecords().put(2L, classRecord(2020, 10, "Good", 700));
+            transientMap.put("record", JsonUtil.serializeToBytes(record));
+            contract.updateStudentRecord(ctx, 7);
+
+            assertEquals(new YearSummary(8, "Excellent"), getStoredSummary().getYears().get(2020));
+        }
+
+        @Test
+        void getStudentSummaries() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+            // A record written before the summaries were added
+            state.put(new CompositeKey("record", mspId, clientId, "8").toString(), JsonUtil.serializeToBytes(record()));
+
+            StudentSummaryMap summaryMap = JsonUtil.deserialize(contract.getStudentSummaries(ctx, "[7, 8, 9]"), StudentSummaryMap.class);
+
+            assertEquals(getStoredSummary(), summaryMap.getSummaries().get(7L));
+            assertEquals("Excellent", summaryMap.getSummaries().get(8L).getLatestFinalClassify());
+            assertEquals(0, summaryMap.getSummaries().get(8L).getVersion());
+            assertEquals(Collections.singletonList(9L), summaryMap.getMissingIds());
+            assertNull(state.get(new CompositeKey("summary", mspId, clientId, "8").toString()));
+        }
+
+        @Test
+        void getStudentSummariesWithoutClassRecords() {
+            state.put(new CompositeKey("record", mspId, clientId, "7").toString(), "{}".getBytes(StandardCharsets.UTF_8));
+
+            StudentSummaryMap summaryMap = JsonUtil.deserialize(contract.getStudentSummaries(ctx, "[7]"), StudentSummaryMap.class);
+
+            assertTrue(summaryMap.getSummaries().get(7L).getYears().isEmpty());
+            assertNull(summaryMap.getSummaries().get(7L).getLatestFinalClassify());
+        }
+
+        @Test
+        void migrateStudentRecords() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+            state.remove(summaryKey);
+
+            assertEquals(1, contract.migrateStudentRecords(ctx, "[7]"));
+            assertEquals(1, getStoredSummary().getVersion());
+            assertEquals(0, contract.migrateStudentRecords(ctx, "[7]"));
+        }
+
+        @Test
+        void archivedYearsKept() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+            contract.sealStudentRecordYear(ctx, 2020);
+            contract.compactStudentRecords(ctx, 2020, "[7]");
+            transientMap.clear();
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2021, 11, "Good", 800)));
+            contract.updateStudentClassRecord(ctx, 7, 2);
+
+            StudentSummary summary = getStoredSummary();
+            assertEquals(new YearSummary(7.75f, "Good"), summary.getYears().get(2020));
+            assertEquals(new YearSummary(8, "Good"), summary.getYears().get(2021));
+        }
+
+        @Test
+        void archivedYearsMissing() {
+            transientMap.put("record", JsonUtil.serializeToBytes(record()));
+            contract.updateStudentRecord(ctx, 7);
+            contract.sealStudentRecordYear(ctx, 2020);
+            contract.compactStudentRecords(ctx, 2020, "[7]");
+            state.remove(summaryKey);
+            transientMap.clear();
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord(2021, 11, "Good", 800)));
+            contract.updateStudentClassRecord(ctx, 7, 2);
+
+            assertEquals(new YearSummary(7.75f, "Good"), getStoredSummary().getYears().get(2020));
+        }
+    }
+
+    @Nested
+    class CountTest extends InMemoryLedgerTest {
+        private final String collectionName = "_implicit_org_" + mspId;
+
+        CountTest() {
+            state.put(new CompositeKey("record", mspId, clientId, "1").toString(), JsonUtil.serializeToBytes(Record.clone(null)));
+            state.put(new CompositeKey("record", mspId, clientId, "2").toString(), JsonUtil.serializeToBytes(Record.clone(null)));
+            state.put(new CompositeKey("recordIndex", mspId, clientId, "1", "0").toString(), "{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        void countStudentRecords() {
+            assertEquals(2, contract.countStudentRecords(ctx));
+        }
+
+        @Test
+        void existsStudentRecords() {
+            ExistenceMap existenceMap = JsonUtil.deserialize(contract.existsStudentRecords(ctx, "[1, 3]"), ExistenceMap.class);
+
+            Map<Long, Boolean> expected = new HashMap<>();
+            expected.put(1L, true);
+            expected.put(3L, false);
+            assertEquals(expected, existenceMap.getExists());
+        }
+
+        @Test
+        void countStudentPersonals() {
+            when(stub.getPrivateDataByPartialCompositeKey(eq(collectionName), any(CompositeKey.class))).thenReturn(new MockQueryResultsIterator<>(Arrays.asList(
+                    new MockKeyValue(new CompositeKey("personal", mspId, clientId, "1").toString(), "{}"),
+                    new MockKeyValue(new CompositeKey("personal", mspId, clientId, "2").toString(), "{}"),
+                    new MockKeyValue(new CompositeKey("personal", mspId, clientId, "3").toString(), "{}")
+            )));
+
+            assertEquals(3, contract.countStudentPersonals(ctx));
+        }
+
+        @Test
+        void existsStudentPersonals() {
+            when(stub.getPrivateDataHash(collectionName, new CompositeKey("personal", mspId, clientId, "1").toString())).thenReturn(new byte[32]);
+
+            ExistenceMap existenceMap = JsonUtil.deserialize(contract.existsStudentPersonals(ctx, "[1, 2]"), ExistenceMap.class);
+
+            Map<Long, Boolean> expected = new HashMap<>();
+            expected.put(1L, true);
+            expected.put(2L, false);
+            assertEquals(expected, existenceMap.getExists());
+            verify(stub, never()).getPrivateData(anyString(), anyString());
+        }
+    }
 }
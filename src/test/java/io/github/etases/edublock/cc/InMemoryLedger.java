@@ -0,0 +1,136 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.util.HashUtil;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * The world state and the private data collections of a ledger, served through a mocked {@link ChaincodeStub}
+ */
+class InMemoryLedger {
+    final TreeMap<String, byte[]> state = new TreeMap<>();
+    final Map<String, TreeMap<String, byte[]>> collections = new HashMap<>();
+
+    /**
+     * Answer the key and state calls of the stub from this ledger
+     *
+     * @param stub the mocked stub
+     */
+    void attach(ChaincodeStub stub) {
+        InMemoryStubs.answerCompositeKeys(stub);
+        when(stub.getState(anyString())).thenAnswer(invocation -> state.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> state.put(invocation.getArgument(0), invocation.getArgument(1))).when(stub).putState(anyString(), any());
+        doAnswer(invocation -> state.remove(invocation.<String>getArgument(0))).when(stub).delState(anyString());
+        when(stub.getStateByPartialCompositeKey(any(CompositeKey.class))).thenAnswer(invocation -> scan(state, invocation.getArgument(0).toString()));
+        when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), anyInt(), anyString()))
+                .thenAnswer(invocation -> scanPage(state, invocation.getArgument(0).toString(), invocation.getArgument(1), invocation.getArgument(2)));
+        when(stub.getPrivateData(anyString(), anyString())).thenAnswer(invocation -> collection(invocation.getArgument(0)).get(invocation.<String>getArgument(1)));
+        when(stub.getPrivateDataHash(anyString(), anyString())).thenAnswer(invocation -> {
+            byte[] value = collection(invocation.getArgument(0)).get(invocation.<String>getArgument(1));
+            return value == null ? null : HashUtil.sha256(value);
+        });
+        doAnswer(invocation -> collection(invocation.getArgument(0)).put(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(stub).putPrivateData(anyString(), anyString(), any(byte[].class));
+        when(stub.getPrivateDataByPartialCompositeKey(anyString(), any(CompositeKey.class)))
+                .thenAnswer(invocation -> scan(collection(invocation.getArgument(0)), invocation.getArgument(1).toString()));
+    }
+
+    TreeMap<String, byte[]> collection(String collectionName) {
+        return collections.computeIfAbsent(collectionName, name -> new TreeMap<>());
+    }
+
+    private static QueryResultsIterator<KeyValue> scan(TreeMap<String, byte[]> values, String prefix) {
+        List<KeyValue> results = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : values.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            results.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        return new QueryResultsIterator<KeyValue>() {
+            @Override
+            public void close() {
+                // do nothing
+            }
+
+            @Override
+            public Iterator<KeyValue> iterator() {
+                return results.iterator();
+            }
+        };
+    }
+
+    /**
+     * Scan a page of the prefix as the peer does: from the bookmark if any, with the key of the next page as the bookmark
+     */
+    private static QueryResultsIteratorWithMetadata<KeyValue> scanPage(TreeMap<String, byte[]> values, String prefix, int pageSize, String bookmark) {
+        List<KeyValue> results = new ArrayList<>();
+        String nextBookmark = "";
+        for (Map.Entry<String, byte[]> entry : values.tailMap(bookmark.isEmpty() ? prefix : bookmark).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (results.size() == pageSize) {
+                nextBookmark = entry.getKey();
+                break;
+            }
+            results.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        ChaincodeShim.QueryResponseMetadata metadata = ChaincodeShim.QueryResponseMetadata.newBuilder()
+                .setBookmark(nextBookmark)
+                .setFetchedRecordsCount(results.size())
+                .build();
+        return new QueryResultsIteratorWithMetadata<KeyValue>() {
+            @Override
+            public ChaincodeShim.QueryResponseMetadata getMetadata() {
+                return metadata;
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+
+            @Override
+            public Iterator<KeyValue> iterator() {
+                return results.iterator();
+            }
+        };
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        private Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
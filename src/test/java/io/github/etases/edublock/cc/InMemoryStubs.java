@@ -0,0 +1,52 @@
+package io.github.etases.edublock.cc;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Creates the mocks of the runs of many transactions, on a ledger kept in memory such as {@link InMemoryLedger}.
+ * The mocks are stub-only: they do not keep every invocation for verification, which would grow with the run.
+ */
+final class InMemoryStubs {
+    private InMemoryStubs() {
+    }
+
+    static <T> T stubOnly(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    static ClientIdentity createClient(String mspId, String clientId) {
+        ClientIdentity client = stubOnly(ClientIdentity.class);
+        when(client.getMSPID()).thenReturn(mspId);
+        when(client.getId()).thenReturn(clientId);
+        return client;
+    }
+
+    static ChaincodeStub createStub(Map<String, byte[]> transientMap) {
+        ChaincodeStub stub = stubOnly(ChaincodeStub.class);
+        when(stub.getTransient()).thenReturn(transientMap);
+        return stub;
+    }
+
+    /**
+     * Build and split the composite keys as the shim does
+     */
+    static void answerCompositeKeys(ChaincodeStub stub) {
+        when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            String[] attributes = new String[arguments.length - 1];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = (String) arguments[i + 1];
+            }
+            return new CompositeKey((String) arguments[0], attributes);
+        });
+        when(stub.splitCompositeKey(anyString())).thenAnswer(invocation -> CompositeKey.parseCompositeKey(invocation.getArgument(0)));
+    }
+}
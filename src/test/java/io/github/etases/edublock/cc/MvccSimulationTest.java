@@ -0,0 +1,156 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.model.ClassRecord;
+import io.github.etases.edublock.cc.model.Classification;
+import io.github.etases.edublock.cc.model.Record;
+import io.github.etases.edublock.cc.model.Subject;
+import io.github.etases.edublock.cc.util.JsonUtil;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how often concurrent record updates invalidate each other at commit, with {@link MvccSimulator}.
+ * The reports of the mixed workloads are printed by the benchmark task, so that storage layout changes can be compared.
+ */
+class MvccSimulationTest {
+    private static final String MSP_ID = "TestOrg";
+    private static final String CLIENT_ID = "TestClient";
+    private static final int STUDENT_COUNT = 100;
+    private static final int CLASS_COUNT = 3;
+    private static final int SUBJECT_COUNT = 13;
+    private static final int TRANSACTION_COUNT = 500;
+
+    private static ClassRecord createClassRecord(long classId, int score) {
+        ClassRecord classRecord = new ClassRecord(2020 + (int) classId, 10 + (int) classId, "1" + classId + "A", new TreeMap<>(), new Classification("Good", "Good", "Excellent"));
+        for (long subjectId = 0; subjectId < SUBJECT_COUNT; subjectId++) {
+            classRecord.getSubjects().put(subjectId, new Subject("Subject " + subjectId, score, score, score));
+        }
+        return classRecord;
+    }
+
+    private static Record createRecord(int score) {
+        Record record = new Record(new TreeMap<>(), 0);
+        for (long classId = 0; classId < CLASS_COUNT; classId++) {
+            record.getClassRecords().put(classId, createClassRecord(classId, score));
+        }
+        return record;
+    }
+
+    private static MvccSimulator.Workload updateClassRecord(int studentCount) {
+        return (contract, ctx, transientMap, transactionNumber) -> {
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(createClassRecord(transactionNumber % CLASS_COUNT, transactionNumber % 1000)));
+            contract.updateStudentClassRecord(ctx, transactionNumber % studentCount, transactionNumber % CLASS_COUNT);
+        };
+    }
+
+    private static MvccSimulator.Workload updateRecord(int studentCount) {
+        return (contract, ctx, transientMap, transactionNumber) -> {
+            transientMap.put("record", JsonUtil.serializeToBytes(createRecord(transactionNumber % 1000)));
+            contract.updateStudentRecord(ctx, transactionNumber % studentCount);
+        };
+    }
+
+    /**
+     * Class record and record updates in the given proportion, on students picked with a skew towards the first ones
+     */
+    private static MvccSimulator.Workload mixed(double classRecordShare, double skew, long seed) {
+        Random random = new Random(seed);
+        return (contract, ctx, transientMap, transactionNumber) -> {
+            long studentId = (long) (Math.pow(random.nextDouble(), skew) * STUDENT_COUNT);
+            if (random.nextDouble() < classRecordShare) {
+                transientMap.put("classRecord", JsonUtil.serializeToBytes(createClassRecord(transactionNumber % CLASS_COUNT, transactionNumber % 1000)));
+                contract.updateStudentClassRecord(ctx, studentId, transactionNumber % CLASS_COUNT);
+            } else {
+                transientMap.put("record", JsonUtil.serializeToBytes(createRecord(transactionNumber % 1000)));
+                contract.updateStudentRecord(ctx, studentId);
+            }
+        };
+    }
+
+    private MvccSimulator simulator(int blockSize, int endorsementLag) {
+        MvccSimulator simulator = new MvccSimulator(MSP_ID, CLIENT_ID, blockSize, endorsementLag);
+        for (int studentId = 0; studentId < STUDENT_COUNT; studentId++) {
+            int id = studentId;
+            simulator.setUp((contract, ctx, transientMap, transactionNumber) -> {
+                transientMap.put("record", JsonUtil.serializeToBytes(createRecord(0)));
+                contract.updateStudentRecord(ctx, id);
+            });
+        }
+        return simulator;
+    }
+
+    private static void print(String workload, MvccSimulator.Report report) {
+        System.out.printf("%s: %s%n", workload, report);
+    }
+
+    @Test
+    void serialTransactionsDoNotConflict() {
+        MvccSimulator.Report report = simulator(1, 0).run(updateRecord(STUDENT_COUNT), 50);
+
+        assertEquals(50, report.valid);
+        assertEquals(0, report.conflictRate());
+    }
+
+    @Test
+    void sameStudentInBlockConflicts() {
+        MvccSimulator.Report report = simulator(10, 0).run(updateClassRecord(1), 100);
+
+        assertEquals(10, report.blocks);
+        assertEquals(10, report.valid);
+        assertEquals(90, report.mvccReadConflicts);
+    }
+
+    @Test
+    void distinctStudentsInBlockDoNotConflict() {
+        MvccSimulator.Report report = simulator(STUDENT_COUNT, 0).run(updateClassRecord(STUDENT_COUNT), TRANSACTION_COUNT);
+
+        assertEquals(TRANSACTION_COUNT, report.valid);
+        assertEquals(0, report.conflictRate());
+    }
+
+    @Test
+    void newLabelsConflict() {
+        // Every transaction adds a subject name to the label dictionary, which all the updates read
+        MvccSimulator.Report report = simulator(10, 0).run((contract, ctx, transientMap, transactionNumber) -> {
+            ClassRecord classRecord = createClassRecord(0, 800);
+            classRecord.getSubjects().get(0L).setName("New subject " + transactionNumber);
+            transientMap.put("classRecord", JsonUtil.serializeToBytes(classRecord));
+            contract.updateStudentClassRecord(ctx, transactionNumber % STUDENT_COUNT, 0);
+        }, 100);
+
+        assertEquals(10, report.valid);
+        assertEquals(90, report.mvccReadConflicts);
+    }
+
+    @Test
+    void endorsementLag() {
+        MvccSimulator.Report report = simulator(10, 1).run(updateClassRecord(10), 200);
+
+        // Every block updates every student, so a block endorsed before the previous one was committed only conflicts
+        assertEquals(100, report.valid);
+        assertEquals(100, report.mvccReadConflicts);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void mixedWorkloads() {
+        int[] blockSizes = {10, 100};
+        double[] skews = {1, 3};
+        for (int blockSize : blockSizes) {
+            for (double skew : skews) {
+                for (int endorsementLag = 0; endorsementLag <= 1; endorsementLag++) {
+                    MvccSimulator.Report report = simulator(blockSize, endorsementLag).run(mixed(0.7, skew, 42), TRANSACTION_COUNT);
+                    print(String.format("70%% updateStudentClassRecord, 30%% updateStudentRecord, block size %d, skew %.0f, endorsement lag %d",
+                            blockSize, skew, endorsementLag), report);
+                    assertEquals(0, report.endorsementFailures);
+                    assertEquals(TRANSACTION_COUNT, report.endorsed());
+                }
+            }
+        }
+    }
+}
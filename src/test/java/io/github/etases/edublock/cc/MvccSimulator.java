@@ -0,0 +1,310 @@
+package io.github.etases.edublock.cc;
+
+import io.github.etases.edublock.cc.util.HashUtil;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Simulates how Fabric commits concurrent transactions of the contract.
+ * The transactions of a block are endorsed against the same committed state, possibly some blocks behind,
+ * their read and write sets are recorded with the versions read, and the block is then validated in order:
+ * a transaction whose reads no longer match the committed versions is invalidated, as the peers do.
+ */
+class MvccSimulator {
+    private static final byte[] DELETED = new byte[0];
+    private final EduBlockChainCode contract = new EduBlockChainCode();
+    private final Map<String, byte[]> transientMap = new HashMap<>();
+    private final ChaincodeStub stub = InMemoryStubs.createStub(transientMap);
+    private final TransactionRunner transactions;
+    private final int blockSize;
+    private final int endorsementLag;
+    // The world state by key, and the private data by collection name and key
+    private TreeMap<String, Version> committed = new TreeMap<>();
+    // The committed state after each of the last blocks
+    private final List<TreeMap<String, Version>> snapshots = new ArrayList<>();
+    private long blockNumber;
+    private int transactionNumber;
+    // The transaction being endorsed and the state it reads
+    private ReadWriteSet readWriteSet;
+    private TreeMap<String, Version> endorsedState;
+
+    /**
+     * @param blockSize      the number of transactions ordered into a block
+     * @param endorsementLag the number of blocks the state read by the endorsing peers is behind
+     */
+    MvccSimulator(String mspId, String clientId, int blockSize, int endorsementLag) {
+        this.blockSize = blockSize;
+        this.endorsementLag = endorsementLag;
+        transactions = new TransactionRunner(contract, stub, InMemoryStubs.createClient(mspId, clientId));
+        InMemoryStubs.answerCompositeKeys(stub);
+        when(stub.getTxTimestamp()).thenAnswer(invocation -> Instant.ofEpochSecond(transactionNumber));
+        when(stub.getTxId()).thenAnswer(invocation -> "tx" + transactionNumber);
+        // The peer serves the reads from the committed state only, a transaction does not read its own writes
+        when(stub.getState(anyString())).thenAnswer(invocation -> readWriteSet.read(endorsedState, invocation.getArgument(0)));
+        doAnswer(invocation -> readWriteSet.writes.put(invocation.getArgument(0), invocation.getArgument(1))).when(stub).putState(anyString(), any());
+        doAnswer(invocation -> readWriteSet.writes.put(invocation.getArgument(0), DELETED)).when(stub).delState(anyString());
+        when(stub.getStateByPartialCompositeKey(any(CompositeKey.class))).thenAnswer(invocation -> readWriteSet.scan(endorsedState, invocation.getArgument(0).toString()));
+        when(stub.getPrivateData(anyString(), anyString())).thenAnswer(invocation -> readWriteSet.read(endorsedState, privateKey(invocation.getArgument(0), invocation.getArgument(1))));
+        when(stub.getPrivateDataHash(anyString(), anyString())).thenAnswer(invocation -> {
+            byte[] value = readWriteSet.read(endorsedState, privateKey(invocation.getArgument(0), invocation.getArgument(1)));
+            return value == null ? null : HashUtil.sha256(value);
+        });
+        doAnswer(invocation -> readWriteSet.writes.put(privateKey(invocation.getArgument(0), invocation.getArgument(1)), invocation.getArgument(2)))
+                .when(stub).putPrivateData(anyString(), anyString(), any(byte[].class));
+    }
+
+    private static String privateKey(String collectionName, String key) {
+        return collectionName + '\u0000' + key;
+    }
+
+    /**
+     * Endorse and commit one transaction on its own, to set up the ledger
+     *
+     * @throws ChaincodeException if the transaction fails
+     */
+    void setUp(Workload workload) {
+        ReadWriteSet readWriteSet = endorse(workload, committed);
+        commit(Collections.singletonList(readWriteSet), new Report());
+    }
+
+    /**
+     * Run the workload until the given number of transactions is submitted
+     *
+     * @return the outcome of the transactions
+     */
+    Report run(Workload workload, int transactionCount) {
+        Report report = new Report();
+        int submitted = 0;
+        while (submitted < transactionCount) {
+            TreeMap<String, Version> endorsedState = snapshots.isEmpty()
+                    ? committed
+                    : snapshots.get(Math.max(0, snapshots.size() - 1 - endorsementLag));
+            List<ReadWriteSet> block = new ArrayList<>();
+            for (int i = 0; i < blockSize && submitted < transactionCount; i++, submitted++) {
+                try {
+                    block.add(endorse(workload, endorsedState));
+                } catch (ChaincodeException exception) {
+                    report.endorsementFailures++;
+                }
+            }
+            commit(block, report);
+        }
+        return report;
+    }
+
+    private ReadWriteSet endorse(Workload workload, TreeMap<String, Version> state) {
+        readWriteSet = new ReadWriteSet();
+        endorsedState = state;
+        transientMap.clear();
+        int number = transactionNumber++;
+        // The writes reach the write set when the state buffer is flushed at the end of the transaction
+        transactions.run(ctx -> {
+            workload.submit(contract, ctx, transientMap, number);
+            return null;
+        });
+        return readWriteSet;
+    }
+
+    private void commit(List<ReadWriteSet> block, Report report) {
+        TreeMap<String, Version> state = new TreeMap<>(committed);
+        for (int i = 0; i < block.size(); i++) {
+            ReadWriteSet readWriteSet = block.get(i);
+            if (!readWriteSet.isReadSetValid(state)) {
+                report.mvccReadConflicts++;
+                continue;
+            }
+            if (!readWriteSet.isRangeSetValid(state)) {
+                report.phantomReadConflicts++;
+                continue;
+            }
+            for (Map.Entry<String, byte[]> write : readWriteSet.writes.entrySet()) {
+                if (write.getValue() == DELETED) {
+                    state.remove(write.getKey());
+                } else {
+                    state.put(write.getKey(), new Version(blockNumber, i, write.getValue()));
+                }
+            }
+            report.valid++;
+        }
+        committed = state;
+        snapshots.add(state);
+        blockNumber++;
+        report.blocks++;
+        // Only the snapshots an endorsement can still read are kept
+        while (snapshots.size() > endorsementLag + 1) {
+            snapshots.remove(0);
+        }
+    }
+
+    /**
+     * A transaction of the workload, calling the contract
+     */
+    @FunctionalInterface
+    interface Workload {
+        void submit(EduBlockChainCode contract, Context ctx, Map<String, byte[]> transientMap, int transactionNumber);
+    }
+
+    /**
+     * The outcome of the transactions of a run
+     */
+    static final class Report {
+        int blocks;
+        int valid;
+        int mvccReadConflicts;
+        int phantomReadConflicts;
+        int endorsementFailures;
+
+        int endorsed() {
+            return valid + mvccReadConflicts + phantomReadConflicts;
+        }
+
+        /**
+         * The share of the endorsed transactions invalidated at commit
+         */
+        double conflictRate() {
+            return endorsed() == 0 ? 0 : (double) (mvccReadConflicts + phantomReadConflicts) / endorsed();
+        }
+
+        /**
+         * The number of valid transactions per block
+         */
+        double effectiveThroughput() {
+            return blocks == 0 ? 0 : (double) valid / blocks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d blocks, %d valid, %d MVCC read conflicts, %d phantom read conflicts, %d endorsement failures, conflict rate %.3f, %.2f valid per block",
+                    blocks, valid, mvccReadConflicts, phantomReadConflicts, endorsementFailures, conflictRate(), effectiveThroughput());
+        }
+    }
+
+    private static final class Version {
+        private final long blockNumber;
+        private final int transactionNumber;
+        private final byte[] value;
+
+        private Version(long blockNumber, int transactionNumber, byte[] value) {
+            this.blockNumber = blockNumber;
+            this.transactionNumber = transactionNumber;
+            this.value = value;
+        }
+
+        private static boolean same(Version version, Version other) {
+            if (version == null || other == null) {
+                return version == other;
+            }
+            return version.blockNumber == other.blockNumber && version.transactionNumber == other.transactionNumber;
+        }
+    }
+
+    private static final class ReadWriteSet {
+        // The version of each key when first read, null if the key did not exist
+        private final Map<String, Version> reads = new HashMap<>();
+        private final Map<String, List<Map.Entry<String, Version>>> ranges = new HashMap<>();
+        private final Map<String, byte[]> writes = new LinkedHashMap<>();
+
+        private byte[] read(TreeMap<String, Version> state, String key) {
+            Version version = state.get(key);
+            if (!reads.containsKey(key)) {
+                reads.put(key, version);
+            }
+            return version == null ? null : version.value;
+        }
+
+        private QueryResultsIterator<KeyValue> scan(TreeMap<String, Version> state, String prefix) {
+            List<Map.Entry<String, Version>> entries = range(state, prefix);
+            ranges.put(prefix, entries);
+            List<KeyValue> results = new ArrayList<>();
+            for (Map.Entry<String, Version> entry : entries) {
+                results.add(new Entry(entry.getKey(), entry.getValue().value));
+            }
+            return new QueryResultsIterator<KeyValue>() {
+                @Override
+                public void close() {
+                    // do nothing
+                }
+
+                @Override
+                public Iterator<KeyValue> iterator() {
+                    return results.iterator();
+                }
+            };
+        }
+
+        private static List<Map.Entry<String, Version>> range(TreeMap<String, Version> state, String prefix) {
+            List<Map.Entry<String, Version>> entries = new ArrayList<>();
+            for (Map.Entry<String, Version> entry : state.tailMap(prefix).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+            return entries;
+        }
+
+        private boolean isReadSetValid(TreeMap<String, Version> state) {
+            for (Map.Entry<String, Version> read : reads.entrySet()) {
+                if (!Version.same(read.getValue(), state.get(read.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Check that the range queries would return the same keys at the same versions, so that no key appeared or disappeared
+         */
+        private boolean isRangeSetValid(TreeMap<String, Version> state) {
+            for (Map.Entry<String, List<Map.Entry<String, Version>>> range : ranges.entrySet()) {
+                List<Map.Entry<String, Version>> current = range(state, range.getKey());
+                if (current.size() != range.getValue().size()) {
+                    return false;
+                }
+                for (int i = 0; i < current.size(); i++) {
+                    if (!current.get(i).getKey().equals(range.getValue().get(i).getKey())
+                            || !Version.same(current.get(i).getValue(), range.getValue().get(i).getValue())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        private Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
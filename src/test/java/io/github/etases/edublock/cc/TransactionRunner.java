@@ -0,0 +1,44 @@
+package io.github.etases.edublock.cc;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs contract calls as transactions on an {@link EduBlockContext}, as the runtime does:
+ * each one with its own state buffer and label dictionary, flushed by {@link EduBlockChainCode#afterTransaction} when it succeeds.
+ * The context is a mock, as its constructor reads the client identity from a real creator certificate.
+ */
+final class TransactionRunner {
+    private final EduBlockChainCode contract;
+    private final ChaincodeStub stub;
+    private final EduBlockContext ctx = InMemoryStubs.stubOnly(EduBlockContext.class);
+    private StateBuffer stateBuffer;
+
+    TransactionRunner(EduBlockChainCode contract, ChaincodeStub stub, ClientIdentity client) {
+        this.contract = contract;
+        this.stub = stub;
+        when(ctx.getStub()).thenReturn(stub);
+        when(ctx.getClientIdentity()).thenReturn(client);
+        when(ctx.getStateBuffer()).thenAnswer(invocation -> stateBuffer);
+        doCallRealMethod().when(ctx).getLabelCodec();
+        doCallRealMethod().when(ctx).setLabelCodec(any());
+    }
+
+    /**
+     * Run the transaction, and write its state if it returns
+     *
+     * @return the result of the transaction
+     */
+    <T> T run(Function<EduBlockContext, T> transaction) {
+        stateBuffer = new StateBuffer(stub);
+        ctx.setLabelCodec(null);
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+}
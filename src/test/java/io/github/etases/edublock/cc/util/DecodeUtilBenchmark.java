@@ -0,0 +1,68 @@
+package io.github.etases.edublock.cc.util;
+
+import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.model.Record;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("benchmark")
+class DecodeUtilBenchmark {
+    private static final int RECORD_COUNT = 20_000;
+    private static final int ROUNDS = 10;
+
+    private static List<byte[]> values() {
+        List<byte[]> values = new ArrayList<>(RECORD_COUNT);
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            Record record = Record.clone(null);
+            for (long classId = 0; classId < 4; classId++) {
+                ClassRecord classRecord = ClassRecord.clone(null);
+                classRecord.setYear(2018 + (int) classId);
+                classRecord.setGrade(10 + (int) classId);
+                classRecord.setClassName("Class " + classId);
+                classRecord.setClassification(new Classification("Good", "Good", "Excellent"));
+                for (long subjectId = 0; subjectId < 12; subjectId++) {
+                    classRecord.getSubjects().put(subjectId, new Subject("Subject " + subjectId, 850, 900, 875));
+                }
+                record.getClassRecords().put(classId, classRecord);
+            }
+            values.add(JsonUtil.serialize(record).getBytes(StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static long time(List<byte[]> values, ForkJoinPool pool) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<Record> records = DecodeUtil.deserializeAll(values, Record.class, pool);
+            best = Math.min(best, System.nanoTime() - start);
+            assertEquals(values.size(), records.size());
+        }
+        return best;
+    }
+
+    @Test
+    void sequentialVersusParallel() {
+        List<byte[]> values = values();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = DecodeUtil.createPool(parallelism);
+        try {
+            assertEquals(DecodeUtil.deserializeAll(values, Record.class, null), DecodeUtil.deserializeAll(values, Record.class, pool));
+            long sequential = time(values, null);
+            long parallel = pool == null ? sequential : time(values, pool);
+            System.out.printf("Decoded %d records: sequential %d ms, parallel (%d threads) %d ms, speedup %.2fx%n",
+                    RECORD_COUNT, sequential / 1_000_000, parallelism, parallel / 1_000_000, (double) sequential / parallel);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+}
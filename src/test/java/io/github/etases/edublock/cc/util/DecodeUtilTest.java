@@ -0,0 +1,68 @@
+package io.github.etases.edublock.cc.util;
+
+import io.github.etases.edublock.cc.model.ClassRecord;
+import io.github.etases.edublock.cc.model.Record;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodeUtilTest {
+    private static List<Record> records(int size) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Record record = Record.clone(null);
+            ClassRecord classRecord = ClassRecord.clone(null);
+            classRecord.setYear(i);
+            record.getClassRecords().put((long) i, classRecord);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<byte[]> serialize(List<Record> records) {
+        List<byte[]> values = new ArrayList<>();
+        for (Record record : records) {
+            values.add(JsonUtil.serialize(record).getBytes(StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    @Test
+    void deserializeAllSequential() {
+        List<Record> records = records(10);
+        assertEquals(records, DecodeUtil.deserializeAll(serialize(records), Record.class, null));
+    }
+
+    @Test
+    void deserializeAllParallelKeepsOrder() {
+        List<Record> records = records(DecodeUtil.MIN_PARALLEL_SIZE * 10);
+        ForkJoinPool pool = DecodeUtil.createPool(4);
+        try {
+            assertEquals(records, DecodeUtil.deserializeAll(serialize(records), Record.class, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void deserializeAllParallelInvalid() {
+        List<byte[]> values = serialize(records(DecodeUtil.MIN_PARALLEL_SIZE));
+        values.set(values.size() / 2, "invalid".getBytes(StandardCharsets.UTF_8));
+        ForkJoinPool pool = DecodeUtil.createPool(4);
+        try {
+            assertThrows(RuntimeException.class, () -> DecodeUtil.deserializeAll(values, Record.class, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void createPoolSequential() {
+        assertNull(DecodeUtil.createPool(1));
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.etases.edublock.cc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HashUtilTest {
+    @Test
+    void toHex() {
+        assertEquals("00ff7f80", HashUtil.toHex(new byte[]{0, -1, 127, -128}));
+        assertEquals("", HashUtil.toHex(new byte[0]));
+    }
+
+    @Test
+    void sha256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashUtil.toHex(HashUtil.sha256("abc".getBytes(StandardCharsets.UTF_8))));
+    }
+}
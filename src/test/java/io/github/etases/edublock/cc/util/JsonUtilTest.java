@@ -5,6 +5,10 @@ import io.github.etases.edublock.cc.model.Classification;
 import io.github.etases.edublock.cc.model.Subject;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JsonUtilTest {
@@ -14,9 +18,26 @@ class JsonUtilTest {
         String jsonString = "{\"name\":\"TestSubject\",\"firstHalfScore\":9.0,\"secondHalfScore\":9.5,\"finalScore\":10.0}";
         Subject subject = JsonUtil.deserialize(jsonString, Subject.class);
         assertEquals("TestSubject", subject.getName());
-        assertEquals(9.0, subject.getFirstHalfScore());
-        assertEquals(9.5, subject.getSecondHalfScore());
-        assertEquals(10.0, subject.getFinalScore());
+        assertEquals(900, subject.getFirstHalfScore());
+        assertEquals(950, subject.getSecondHalfScore());
+        assertEquals(1000, subject.getFinalScore());
+    }
+
+    @Test
+    void deserializeLegacyFloatScore() {
+        String jsonString = "{\"name\":\"TestSubject\",\"firstHalfScore\":8.300000190734863,\"secondHalfScore\":7.699999809265137,\"finalScore\":8}";
+        Subject subject = JsonUtil.deserialize(jsonString, Subject.class);
+        assertEquals(830, subject.getFirstHalfScore());
+        assertEquals(770, subject.getSecondHalfScore());
+        assertEquals(800, subject.getFinalScore());
+    }
+
+    @Test
+    void serializeScore() {
+        Subject subject = new Subject("TestSubject", 830, 1000, 875);
+        String jsonString = JsonUtil.serialize(subject);
+        assertEquals("{\"finalScore\":8.75,\"firstHalfScore\":8.3,\"name\":\"TestSubject\",\"secondHalfScore\":10}", jsonString);
+        assertEquals(subject, JsonUtil.deserialize(jsonString, Subject.class));
     }
 
     @Test
@@ -43,4 +64,25 @@ class JsonUtilTest {
         Classification deserialized = JsonUtil.deserialize(jsonString, Classification.class);
         assertEquals(classification, deserialized);
     }
-}
\ No newline at end of file
+
+    @Test
+    void serializeToBytes() {
+        Classification classification = new Classification(
+                "Giỏi", "Khá", "Xuất sắc"
+        );
+        byte[] json = JsonUtil.serializeToBytes(classification);
+        assertArrayEquals(JsonUtil.serialize(classification).getBytes(StandardCharsets.UTF_8), json);
+        assertEquals(classification, JsonUtil.deserialize(json, Classification.class));
+    }
+
+    @Test
+    void serializeToStream() {
+        Classification classification = new Classification(
+                "Giỏi", "Khá", "Xuất sắc"
+        );
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        JsonUtil.serialize(classification, outputStream);
+        Classification deserialized = JsonUtil.deserialize(new ByteArrayInputStream(outputStream.toByteArray()), Classification.class);
+        assertEquals(classification, deserialized);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.etases.edublock.cc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadUtilTest {
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16];
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] value) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(value);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    void openChunks() throws IOException {
+        InputStream inputStream = PayloadUtil.open(Arrays.asList(
+                "{\"a\":".getBytes(StandardCharsets.UTF_8),
+                "1}".getBytes(StandardCharsets.UTF_8)
+        ), null);
+        assertEquals("{\"a\":1}", new String(readAll(inputStream), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void openCompressedChunks() throws IOException {
+        byte[] compressed = gzip("{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        int half = compressed.length / 2;
+        InputStream inputStream = PayloadUtil.open(Arrays.asList(
+                Arrays.copyOfRange(compressed, 0, half),
+                Arrays.copyOfRange(compressed, half, compressed.length)
+        ), PayloadUtil.GZIP_ENCODING);
+        assertEquals("{\"a\":1}", new String(readAll(inputStream), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void openUnknownEncoding() {
+        assertThrows(IOException.class, () -> PayloadUtil.open(Collections.singletonList(new byte[0]), "br"));
+    }
+
+    @Test
+    void openOverLimit() throws IOException {
+        // Compresses to a few bytes, so the limit has to apply to the decompressed size
+        byte[] compressed = gzip(new byte[1024]);
+        InputStream inputStream = PayloadUtil.open(Collections.singletonList(compressed), PayloadUtil.GZIP_ENCODING, 512);
+        assertThrows(IOException.class, () -> readAll(inputStream));
+    }
+}
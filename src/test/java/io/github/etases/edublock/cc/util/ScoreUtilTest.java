@@ -0,0 +1,43 @@
+package io.github.etases.edublock.cc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoreUtilTest {
+    @Test
+    void toHundredths() {
+        assertEquals(830, ScoreUtil.toHundredths(8.3));
+        assertEquals(830, ScoreUtil.toHundredths(8.3f));
+        assertEquals(1000, ScoreUtil.toHundredths(10));
+        assertEquals(0, ScoreUtil.toHundredths(0));
+        assertThrows(ArithmeticException.class, () -> ScoreUtil.toHundredths(Double.NaN));
+        assertThrows(ArithmeticException.class, () -> ScoreUtil.toHundredths(1e10));
+    }
+
+    @Test
+    void toHundredthsRoundTripsFloats() {
+        // Every score stored as a float before comes back to its two-decimal value
+        for (int hundredths = 0; hundredths <= 1000; hundredths++) {
+            assertEquals(hundredths, ScoreUtil.toHundredths((double) (hundredths / 100f)));
+        }
+    }
+
+    @Test
+    void toDecimal() {
+        assertEquals("8.3", ScoreUtil.toDecimal(830).toString());
+        assertEquals("8.75", ScoreUtil.toDecimal(875).toString());
+        assertEquals("10", ScoreUtil.toDecimal(1000).toString());
+        assertEquals("0", ScoreUtil.toDecimal(0).toString());
+        assertEquals("100", ScoreUtil.toDecimal(10000).toString());
+        assertEquals(new BigDecimal("12.05"), ScoreUtil.toDecimal(1205));
+    }
+
+    @Test
+    void average() {
+        assertEquals(8.5f, ScoreUtil.average(1700, 2));
+        assertEquals(8.3f, ScoreUtil.average(830 * 3, 3));
+    }
+}
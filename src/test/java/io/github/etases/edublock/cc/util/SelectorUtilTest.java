@@ -0,0 +1,152 @@
+package io.github.etases.edublock.cc.util;
+
+import io.github.etases.edublock.cc.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectorUtilTest {
+    private static final Path INDEX_DIRECTORY = Paths.get("META-INF", "statedb", "couchdb", "indexes");
+
+    private static RecordIndex index(String clientId, long studentId, int year, int grade, String finalClassify, int finalScore) {
+        ClassRecord classRecord = ClassRecord.clone(null);
+        classRecord.setYear(year);
+        classRecord.setGrade(grade);
+        classRecord.getClassification().setFinalClassify(finalClassify);
+        classRecord.getSubjects().put(0L, new Subject("Math", 0, 0, finalScore));
+        return RecordIndex.of("TestOrg", clientId, studentId, 0, classRecord);
+    }
+
+    private static List<Long> evaluate(RecordFilter filter, List<RecordIndex> documents) {
+        Map<?, ?> query = JsonUtil.deserialize(SelectorUtil.buildRecordIndexQuery("TestOrg", "TestClient", filter), Map.class);
+        Map<?, ?> selector = (Map<?, ?>) query.get("selector");
+        return documents.stream()
+                .filter(document -> matches(selector, JsonUtil.deserialize(JsonUtil.serialize(document), Map.class)))
+                .map(RecordIndex::getStudentId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A minimal in-memory evaluator for the subset of CouchDB selectors the contract builds
+     */
+    private static boolean matches(Map<?, ?> selector, Map<?, ?> document) {
+        for (Map.Entry<?, ?> entry : selector.entrySet()) {
+            String field = (String) entry.getKey();
+            if (field.equals("$and")) {
+                for (Object subSelector : (List<?>) entry.getValue()) {
+                    if (!matches((Map<?, ?>) subSelector, document)) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            Object value = document.get(field);
+            Object condition = entry.getValue();
+            if (condition instanceof Map) {
+                for (Map.Entry<?, ?> operator : ((Map<?, ?>) condition).entrySet()) {
+                    if (!matchesOperator((String) operator.getKey(), value, operator.getValue())) {
+                        return false;
+                    }
+                }
+            } else if (!matchesOperator("$eq", value, condition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesOperator(String operator, Object value, Object operand) {
+        if (value == null) {
+            return false;
+        }
+        if (operator.equals("$eq")) {
+            return compare(value, operand) == 0;
+        }
+        int comparison = compare(value, operand);
+        switch (operator) {
+            case "$gt":
+                return comparison > 0;
+            case "$gte":
+                return comparison >= 0;
+            case "$lt":
+                return comparison < 0;
+            case "$lte":
+                return comparison <= 0;
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + operator);
+        }
+    }
+
+    private static int compare(Object value, Object operand) {
+        if (value instanceof Number && operand instanceof Number) {
+            return Double.compare(((Number) value).doubleValue(), ((Number) operand).doubleValue());
+        }
+        return value.toString().compareTo(operand.toString());
+    }
+
+    private static List<RecordIndex> documents() {
+        return Arrays.asList(
+                index("TestClient", 1, 2020, 10, "Good", 850),
+                index("TestClient", 2, 2021, 11, "Good", 950),
+                index("TestClient", 3, 2021, 11, "Bad", 400),
+                index("OtherClient", 4, 2021, 11, "Good", 950)
+        );
+    }
+
+    @Test
+    void selectByYear() {
+        assertEquals(Arrays.asList(2L, 3L), evaluate(new RecordFilter(2021, null, null, null), documents()));
+    }
+
+    @Test
+    void selectByClassification() {
+        assertEquals(Arrays.asList(1L, 2L), evaluate(new RecordFilter(null, null, "Good", null), documents()));
+    }
+
+    @Test
+    void selectByScoreThreshold() {
+        assertEquals(Arrays.asList(1L, 2L), evaluate(new RecordFilter(null, null, null, 8.5f), documents()));
+    }
+
+    @Test
+    void selectCombined() {
+        assertEquals(Collections.singletonList(2L), evaluate(new RecordFilter(2021, 11, "Good", 9f), documents()));
+    }
+
+    @Test
+    void selectAll() {
+        assertEquals(Arrays.asList(1L, 2L, 3L), evaluate(new RecordFilter(), documents()));
+    }
+
+    @Test
+    void indexesCoverSelectorFields() throws IOException {
+        List<List<?>> indexFields = new ArrayList<>();
+        try (Stream<Path> files = Files.list(INDEX_DIRECTORY)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Map<?, ?> definition = JsonUtil.deserialize(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), Map.class);
+                indexFields.add((List<?>) ((Map<?, ?>) definition.get("index")).get("fields"));
+            }
+        }
+        List<RecordFilter> filters = Arrays.asList(
+                new RecordFilter(2021, null, null, null),
+                new RecordFilter(null, 11, null, null),
+                new RecordFilter(null, null, "Good", null),
+                new RecordFilter(null, null, null, 8f)
+        );
+        for (RecordFilter filter : filters) {
+            Map<?, ?> query = JsonUtil.deserialize(SelectorUtil.buildRecordIndexQuery("TestOrg", "TestClient", filter), Map.class);
+            Set<?> selectorFields = ((Map<?, ?>) query.get("selector")).keySet();
+            assertTrue(indexFields.stream().anyMatch(fields -> fields.containsAll(selectorFields) && selectorFields.containsAll(fields)),
+                    "No index for the selector fields " + selectorFields);
+        }
+    }
+}
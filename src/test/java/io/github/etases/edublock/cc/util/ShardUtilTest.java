@@ -0,0 +1,52 @@
+package io.github.etases.edublock.cc.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardUtilTest {
+    @Test
+    void getBoundary() {
+        assertEquals("", ShardUtil.getBoundary(0, 4));
+        assertEquals("25", ShardUtil.getBoundary(1, 4));
+        assertEquals("5", ShardUtil.getBoundary(2, 4));
+        assertEquals("75", ShardUtil.getBoundary(3, 4));
+        assertNull(ShardUtil.getBoundary(4, 4));
+        assertEquals("333333333", ShardUtil.getBoundary(1, 3));
+        assertEquals("05", ShardUtil.getBoundary(1, 20));
+        assertEquals("", ShardUtil.getBoundary(0, 1));
+        assertNull(ShardUtil.getBoundary(1, 1));
+    }
+
+    @Test
+    void getBoundaryInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ShardUtil.getBoundary(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> ShardUtil.getBoundary(-1, 4));
+        assertThrows(IllegalArgumentException.class, () -> ShardUtil.getBoundary(5, 4));
+        assertThrows(IllegalArgumentException.class, () -> ShardUtil.getBoundary(0, ShardUtil.MAX_SHARD_COUNT + 1));
+    }
+
+    @Test
+    void contains() {
+        assertTrue(ShardUtil.contains("2", 0, 4));
+        assertTrue(ShardUtil.contains("249", 0, 4));
+        assertTrue(ShardUtil.contains("25", 1, 4));
+        assertTrue(ShardUtil.contains("3", 1, 4));
+        assertTrue(ShardUtil.contains("999", 3, 4));
+    }
+
+    @Test
+    void everyIdInOneShard() {
+        for (int shardCount = 1; shardCount <= 12; shardCount++) {
+            for (long id = 0; id < 2000; id++) {
+                int shards = 0;
+                for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+                    if (ShardUtil.contains(Long.toString(id), shardIndex, shardCount)) {
+                        shards++;
+                    }
+                }
+                assertEquals(1, shards, "id " + id + " of " + shardCount + " shards");
+            }
+        }
+    }
+}
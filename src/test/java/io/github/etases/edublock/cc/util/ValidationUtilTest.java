@@ -0,0 +1,92 @@
+package io.github.etases.edublock.cc.util;
+
+import io.github.etases.edublock.cc.model.*;
+import io.github.etases.edublock.cc.model.Record;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationUtilTest {
+    private static ValidationUtil.Limits limits(int maxRecords, int maxClassRecords, int maxSubjects, int maxTextLength) {
+        return new ValidationUtil.Limits(maxRecords, maxClassRecords, maxSubjects, maxTextLength, 1024);
+    }
+
+    private static Record createRecord(int classCount, int subjectCount) {
+        Record record = new Record(new TreeMap<>(), 0);
+        for (long classId = 0; classId < classCount; classId++) {
+            ClassRecord classRecord = new ClassRecord(2020, 10, "10A" + classId, new TreeMap<>(), new Classification("Good", "Good", "Good"));
+            for (long subjectId = 0; subjectId < subjectCount; subjectId++) {
+                classRecord.getSubjects().put(subjectId, new Subject("Subject " + subjectId, 800, 900, 850));
+            }
+            record.getClassRecords().put(classId, classRecord);
+        }
+        return record;
+    }
+
+    @Test
+    void validateRecord() {
+        Record record = createRecord(3, 5);
+        byte[] json = JsonUtil.serializeToBytes(record);
+        assertEquals(record, ValidationUtil.deserialize(new ByteArrayInputStream(json), Record.class));
+    }
+
+    @Test
+    void validateTooManyClassRecords() {
+        byte[] json = JsonUtil.serializeToBytes(createRecord(3, 1));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(json), Record.class, limits(10, 2, 10, 100)));
+        assertEquals("More than 2 class records", exception.getMessage());
+    }
+
+    @Test
+    void validateTooManySubjects() {
+        ValidationUtil.Limits limits = limits(10, 10, 4, 100);
+        byte[] json = JsonUtil.serializeToBytes(createRecord(1, 5));
+        assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(json), Record.class, limits));
+        byte[] classRecordJson = JsonUtil.serializeToBytes(createRecord(1, 5).getClassRecords().get(0L));
+        assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(classRecordJson), ClassRecord.class, limits));
+    }
+
+    @Test
+    void validateTooManyRecords() {
+        RecordMap recordMap = new RecordMap(new TreeMap<>());
+        recordMap.getRecords().put(1L, createRecord(1, 1));
+        recordMap.getRecords().put(2L, createRecord(1, 1));
+        byte[] json = JsonUtil.serializeToBytes(recordMap);
+        assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(json), RecordMap.class, limits(1, 10, 10, 100)));
+    }
+
+    @Test
+    void validateNestedRecordInRecordMap() {
+        RecordMap recordMap = new RecordMap(Collections.singletonMap(1L, createRecord(1, 2)));
+        byte[] json = JsonUtil.serializeToBytes(recordMap);
+        assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(json), RecordMap.class, limits(10, 10, 1, 100)));
+    }
+
+    @Test
+    void validatePersonalTextLength() {
+        ValidationUtil.Limits limits = limits(10, 10, 10, 10);
+        Personal personal = new Personal();
+        personal.setFirstName("Nguyễn Văn");
+        personal.setAvatar("https://example.com/avatar/student.png");
+        assertDoesNotThrow(() -> ValidationUtil.deserialize(new ByteArrayInputStream(JsonUtil.serializeToBytes(personal)), Personal.class, limits));
+
+        personal.setLastName("Nguyễn Văn An");
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> ValidationUtil.deserialize(new ByteArrayInputStream(JsonUtil.serializeToBytes(personal)), Personal.class, limits));
+        assertEquals("\"lastName\" is longer than 10 characters", exception.getMessage());
+    }
+
+    @Test
+    void excerpt() throws IOException {
+        assertEquals("{}", ValidationUtil.excerpt(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8))));
+        byte[] json = JsonUtil.serializeToBytes(createRecord(10, 10));
+        String excerpt = ValidationUtil.excerpt(new ByteArrayInputStream(json));
+        assertTrue(excerpt.length() < 200);
+        assertTrue(excerpt.endsWith("(" + json.length + " bytes)"));
+    }
+}